@@ -0,0 +1,133 @@
+package ca.ncct.uottawa.selforg.ant.sim;
+
+import org.cloudbus.cloudsim.ex.disk.HddVm;
+import org.cloudbus.cloudsim.ex.web.workload.brokers.WebBroker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ant control loop over synthetic fleets: the steps of a single ant, and a full {@link AntAutoScalingPolicy}
+ * tick with one ant per server. The tick leaves the fleet as it is so that every tick works on the same fleet size,
+ * the optimizers have their own benchmarks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AntBenchmark {
+    // the simulations run the policies every 4 seconds
+    private static final double TICK = 4;
+    private static final double START_PHEROMONE = 57.5;
+
+    @Param({"10", "100", "1000", "10000"})
+    int servers;
+
+    // servers per shard of the colony in scaleTick, 0 for a single colony
+    @Param({"0"})
+    int shardSize;
+
+    @Param({"false"})
+    boolean parallelAntSteps;
+
+    private List<HddVm> fleet;
+    private Ant ant;
+    private HddVm current;
+    private WebBroker broker;
+    private AntAutoScalingPolicy policy;
+    private double time;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkFleet.initCloudSim();
+        SplittableRandom random = new SplittableRandom(42);
+        fleet = BenchmarkFleet.servers(servers, random);
+
+        ant = new Ant(0, BenchmarkFleet.config(), random.split());
+        current = fleet.get(0);
+        // the first step puts every server in the visit history
+        ant.controlStep(current, START_PHEROMONE, current.getCPUUtil(), fleet, 0);
+
+        broker = BenchmarkFleet.broker(fleet);
+        Properties props = BenchmarkFleet.antProperties();
+        props.setProperty("shardSize", String.valueOf(shardSize));
+        props.setProperty("parallelAntSteps", String.valueOf(parallelAntSteps));
+        policy = new AntAutoScalingPolicy(props, BenchmarkFleet.APP_ID, new FixedFleetOptimizer());
+        // the first tick places the ants
+        time = 0;
+        policy.scale(broker, time);
+    }
+
+    /**
+     * A step followed by a wait, an ant alternates between the two once its wait time has passed.
+     */
+    @Benchmark
+    public void controlStep(Blackhole bh) {
+        for (int i = 0; i < 2; i++) {
+            bh.consume(ant.controlStep(current, START_PHEROMONE, current.getCPUUtil(), fleet, 60));
+            if (ant.getNextNode() != null) {
+                current = ant.getNextNode();
+            }
+        }
+    }
+
+    @Benchmark
+    public HddVm jumpNextNode() {
+        return ant.jumpNextNode(current, fleet);
+    }
+
+    @Benchmark
+    public Morph morph() {
+        return ant.morph();
+    }
+
+    @Benchmark
+    public void scaleTick() {
+        time += TICK;
+        policy.scale(broker, time);
+    }
+
+    /**
+     * Never scales, so that the fleet does not change between ticks.
+     */
+    private static final class FixedFleetOptimizer implements IAntOptimizer {
+        @Override
+        public int getAddServers() {
+            return 0;
+        }
+
+        @Override
+        public int getRemoveServers() {
+            return 0;
+        }
+
+        @Override
+        public void setAnts(Set<Ant> ants) {
+        }
+
+        @Override
+        public void setPheromones(Double maxPher, Double minPher) {
+        }
+
+        @Override
+        public void setRandom(SplittableRandom random) {
+        }
+    }
+}
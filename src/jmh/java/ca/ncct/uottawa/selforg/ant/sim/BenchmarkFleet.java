@@ -0,0 +1,144 @@
+package ca.ncct.uottawa.selforg.ant.sim;
+
+import org.cloudbus.cloudsim.Vm;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.ex.disk.HddCloudletSchedulerTimeShared;
+import org.cloudbus.cloudsim.ex.disk.HddVm;
+import org.cloudbus.cloudsim.ex.util.CustomLog;
+import org.cloudbus.cloudsim.ex.web.RoundRobinDBBalancer;
+import org.cloudbus.cloudsim.ex.web.SimpleWebLoadBalancer;
+import org.cloudbus.cloudsim.ex.web.workload.brokers.WebBroker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic app server fleets for the benchmarks, built without running a simulation. Servers report a fixed cpu
+ * utilisation and no sessions, and the broker does not actually create or destroy VMs.
+ */
+final class BenchmarkFleet {
+    static final long APP_ID = 1;
+
+    private BenchmarkFleet() {
+    }
+
+    /**
+     * Initialises CloudSim, which the broker and VMs need to exist, and turns the logging off.
+     */
+    static void initCloudSim() throws IOException {
+        CloudSim.init(1, Calendar.getInstance(), false);
+        Properties logProps = new Properties();
+        logProps.setProperty("LogLevel", "OFF");
+        logProps.setProperty("ShutStandardLogger", "true");
+        CustomLog.configLogger(logProps);
+    }
+
+    /**
+     * @return the ant settings of the sim1 simulation, seeded
+     */
+    static Properties antProperties() {
+        Properties props = new Properties();
+        props.setProperty("decayAmount", "1");
+        props.setProperty("decayRate", "15");
+        props.setProperty("antWaitTime", "15");
+        props.setProperty("antPheromone", "4");
+        props.setProperty("antHistorySize", "5");
+        props.setProperty("maxMorphLevel", "90");
+        props.setProperty("minMorphLevel", "25");
+        props.setProperty("maxBalanceLevel", "0.55");
+        props.setProperty("minBalanceLevel", "0.45");
+        props.setProperty("seed", "42");
+        return props;
+    }
+
+    static AntSystemConfig config() {
+        return new AntSystemConfig(antProperties());
+    }
+
+    /**
+     * @return count servers with a cpu utilisation uniformly drawn between 0.1 and 0.9
+     */
+    static List<HddVm> servers(int count, SplittableRandom random) {
+        List<HddVm> servers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            servers.add(new SyntheticVm(random.nextDouble(0.1, 0.9)));
+        }
+        return servers;
+    }
+
+    /**
+     * @return count ants which have each visited a few servers, so that their memory is full of pheromone levels
+     * spread around the middle of the morph range
+     */
+    static Set<Ant> colony(int count, SplittableRandom random) {
+        AntSystemConfig config = config();
+        List<HddVm> neighbourhood = servers(10, random);
+        Set<Ant> colony = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            Ant ant = new Ant(i, config, random.split());
+            HddVm current = neighbourhood.get(0);
+            // every other step is a wait
+            for (int step = 0; step < 2 * config.getAntHistorySize(); step++) {
+                double pheromone = random.nextDouble(config.getMinMorphLevel(), config.getMaxMorphLevel());
+                ant.controlStep(current, pheromone, current.getCPUUtil(), neighbourhood, 60);
+                if (ant.getNextNode() != null) {
+                    current = ant.getNextNode();
+                }
+            }
+            colony.add(ant);
+        }
+        return colony;
+    }
+
+    /**
+     * @return a broker with a single load balancer, of application {@link #APP_ID}, over the servers
+     */
+    static WebBroker broker(List<HddVm> servers) throws Exception {
+        WebBroker broker = new FleetBroker();
+        broker.addLoadBalancer(new SimpleWebLoadBalancer(APP_ID, "127.0.0.1", new ArrayList<>(servers),
+                new RoundRobinDBBalancer(new ArrayList<>())));
+        return broker;
+    }
+
+    static final class SyntheticVm extends HddVm {
+        private final double cpu;
+
+        SyntheticVm(double cpu) {
+            super("App-Srv", 0, 250, 200, 1, 1024 * 8, 1000, 10000, "Xen", new HddCloudletSchedulerTimeShared(),
+                    new Integer[0]);
+            this.cpu = cpu;
+        }
+
+        @Override
+        public double getCPUUtil() {
+            return cpu;
+        }
+    }
+
+    private static final class FleetBroker extends WebBroker {
+
+        FleetBroker() throws Exception {
+            super("Broker", 4, 24 * 3600, 1, 1, 0);
+        }
+
+        @Override
+        public Set<Integer> getSessionsInServer(int vmId) {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public void createVmsAfter(List<? extends Vm> vms, double delay) {
+        }
+
+        @Override
+        public void destroyVMsAfter(List<? extends Vm> vms, double delay) {
+        }
+    }
+}
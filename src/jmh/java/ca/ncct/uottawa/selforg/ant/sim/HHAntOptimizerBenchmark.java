@@ -0,0 +1,63 @@
+package ca.ncct.uottawa.selforg.ant.sim;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * House hunting of the {@link HHAntOptimizer} as the colony grows, called the way the policy calls it on a scale
+ * action. The number of recruitment phases is random so every call settles differently, run with -prof gc for the
+ * allocation per call and see {@link HouseHuntPhases} for the distribution of the phase counts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HHAntOptimizerBenchmark {
+    static final double MAX_PHEROMONE = 90;
+    // the policy passes the middle of the morph range as the minimum
+    static final double MID_PHEROMONE = (90 + 25) / 2d;
+
+    // a recruitment phase is O(n log n) in the colony size, larger colonies can be given with -p ants=10000
+    @Param({"10", "100", "1000"})
+    int ants;
+
+    private Set<Ant> colony;
+    private HHAntOptimizer optimizer;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        colony = BenchmarkFleet.colony(ants, random);
+        optimizer = new HHAntOptimizer();
+        optimizer.setRandom(random.split());
+    }
+
+    @Benchmark
+    public int getAddServers() {
+        optimizer.setAnts(colony);
+        optimizer.setPheromones(MAX_PHEROMONE, MID_PHEROMONE);
+        return optimizer.getAddServers();
+    }
+
+    @Benchmark
+    public int getRemoveServers() {
+        optimizer.setAnts(colony);
+        optimizer.setPheromones(MAX_PHEROMONE, MID_PHEROMONE);
+        return optimizer.getRemoveServers();
+    }
+}
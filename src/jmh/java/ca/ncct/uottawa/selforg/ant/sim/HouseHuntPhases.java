@@ -0,0 +1,58 @@
+package ca.ncct.uottawa.selforg.ant.sim;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Distribution of the number of recruitment phases and of the wall time of house hunts, per colony size, since JMH
+ * only reports averages. Run with java -cp target/benchmarks.jar ca.ncct.uottawa.selforg.ant.sim.HouseHuntPhases
+ * [runs] [colony sizes...].
+ */
+public class HouseHuntPhases {
+
+    public static void main(String[] args) {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int[] sizes = args.length > 1 ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{10, 100, 1000};
+
+        System.out.println("Ants,Call,Runs,MinPhases,P50Phases,P90Phases,P99Phases,MaxPhases,AvgMs,P99Ms");
+        for (int size : sizes) {
+            SplittableRandom random = new SplittableRandom(42);
+            Set<Ant> colony = BenchmarkFleet.colony(size, random);
+            HHAntOptimizer optimizer = new HHAntOptimizer();
+            optimizer.setRandom(random.split());
+
+            for (boolean add : new boolean[]{true, false}) {
+                int[] phases = new int[runs];
+                double[] millis = new double[runs];
+                for (int i = 0; i < runs; i++) {
+                    long start = System.nanoTime();
+                    optimizer.setAnts(colony);
+                    optimizer.setPheromones(HHAntOptimizerBenchmark.MAX_PHEROMONE,
+                            HHAntOptimizerBenchmark.MID_PHEROMONE);
+                    if (add) {
+                        optimizer.getAddServers();
+                    } else {
+                        optimizer.getRemoveServers();
+                    }
+                    millis[i] = (System.nanoTime() - start) / 1e6;
+                    phases[i] = optimizer.getRecruitmentPhases();
+                }
+                Arrays.sort(phases);
+                Arrays.sort(millis);
+                System.out.printf("%d,%s,%d,%d,%d,%d,%d,%d,%.3f,%.3f%n", size, add ? "add" : "remove", runs,
+                        phases[0], percentile(phases, 50), percentile(phases, 90), percentile(phases, 99),
+                        phases[runs - 1], Arrays.stream(millis).average().orElse(0), millis[index(runs, 99)]);
+            }
+        }
+    }
+
+    private static int percentile(int[] sorted, double percentile) {
+        return sorted[index(sorted.length, percentile)];
+    }
+
+    private static int index(int length, double percentile) {
+        return Math.max(0, (int) Math.ceil(percentile / 100 * length) - 1);
+    }
+}
@@ -1,48 +1,53 @@
 package ca.ncct.uottawa.selforg.ant.sim;
 
-import org.apache.commons.collections4.map.LinkedMap;
-import org.apache.commons.lang3.tuple.Pair;
 import org.cloudbus.cloudsim.ex.disk.HddVm;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class Ant implements Comparable<Ant> {
 
+    //contains server id, pheromone level
+    private final Memory antMemory;
     //contains server id, time since visit, pheromone level
-    private LinkedHashMap<Integer, Double> antMemory = new LinkedHashMap<>();
-    private final Map<HddVm, Pair<Integer, Double>> visitHistory = new HashMap<>();
+    private final VisitHistory visitHistory = new VisitHistory();
     private final int uid;
     private final AntSystemConfig config;
+    private final SplittableRandom rand;
+    private final WeightedSampler sampler = new WeightedSampler();
+    private int[] knownSlots = new int[0];
     private int waitTime = 0;
     private HddVm nextNode = null;
+    private int nextNodeIndex = -1;
 
-    public Ant(int id, AntSystemConfig config) {
+    public Ant(int id, AntSystemConfig config, SplittableRandom rand) {
         uid = id;
         this.config = config;
+        this.rand = rand;
+        antMemory = new Memory(config.getAntHistorySize());
     }
 
-    public Ant(Ant next) {
+    /**
+     * A fake copy of the memory of the given ant with its own random stream, so that creating it does not advance the
+     * stream of the real ant.
+     */
+    public Ant(Ant next, SplittableRandom rand) {
         config = next.config;
         uid = -1;
-        antMemory.putAll(next.antMemory);
+        this.rand = rand;
+        antMemory = new Memory(next.antMemory);
     }
 
-    // result is - next server id, sleep time before jumping, new pheromone level at current server
-    Double controlStep(HddVm currentVM, Double pherLevel, Double fuzzyFactor, List<HddVm> knownServers, double timePassed) {
+    // result is the new pheromone level at current server, or NaN if the ant is still waiting
+    double controlStep(HddVm currentVM, double pherLevel, double fuzzyFactor, List<HddVm> knownServers, double timePassed) {
         if (waitTime > 0) {
             waitTime -= timePassed;
-            return null;
+            return Double.NaN;
         } else {
-            Double newPheromone = calculatePheromone(fuzzyFactor) + pherLevel;
+            double newPheromone = calculatePheromone(fuzzyFactor) + pherLevel;
             antMemory.put(currentVM.getId(), newPheromone);
-            if (antMemory.size() > config.getAntHistorySize()) {
-                Iterator<Integer> iterator = antMemory.keySet().iterator();
-                iterator.next();
-                iterator.remove();
-            }
             waitTime = updateTables(currentVM, newPheromone, fuzzyFactor, knownServers);
-            nextNode = jumpNextNode(currentVM, knownServers);
+            nextNodeIndex = jumpNextIndex(currentVM, knownServers);
+            nextNode = nextNodeIndex < 0 ? currentVM : knownServers.get(nextNodeIndex);
 
             newPheromone = Math.min(config.getMaxMorphLevel() * 1.5, newPheromone);
             newPheromone = Math.max(0, newPheromone);
@@ -51,7 +56,7 @@ public class Ant implements Comparable<Ant> {
         }
     }
 
-    private double calculatePheromone(Double fuzzyFactor) {
+    private double calculatePheromone(double fuzzyFactor) {
         if (config.getMinBalanceLevel() <= fuzzyFactor && fuzzyFactor <= config.getMaxBalanceLevel()) {
             return 0.5 * config.getAntPheromone();
         } else if (config.getMinBalanceLevel() > fuzzyFactor) {
@@ -61,153 +66,154 @@ public class Ant implements Comparable<Ant> {
         }
     }
 
-    private int updateTables(HddVm currentVM, Double newPheromoneValue, Double fuzzyFactor, List<HddVm> knownServers) {
-        Random rand = new Random();
-        Double waitTime = Math.ceil(Math.min(60, config.getAntWaitTime() / (1 - fuzzyFactor)));
-        Pair<Integer, Double> maxWait = Pair.of(0, 0d);
-        if (!visitHistory.isEmpty()) {
-            maxWait = visitHistory.entrySet().stream()
-                    .max((entry1, entry2) -> entry1.getValue().getLeft() - entry2.getValue().getLeft()).get().getValue();
-        }
+    private int updateTables(HddVm currentVM, double newPheromoneValue, double fuzzyFactor, List<HddVm> knownServers) {
+        int waitTime = (int) Math.ceil(Math.min(60, config.getAntWaitTime() / (1 - fuzzyFactor)));
+        int maxWait = visitHistory.getMaxTime();
 
         // update visit table
-        visitHistory.replaceAll((k, v) -> {
-            if (k.equals(currentVM)) {
-                return Pair.of(0, newPheromoneValue);
-            } else {
-                return Pair.of(v.getLeft() + waitTime.intValue(), v.getRight());
-            }
-        });
-
-        List<HddVm> unknown = knownServers.stream().filter(server -> !visitHistory.containsKey(server)).
-                collect(Collectors.toList());
+        visitHistory.age(currentVM.getId(), newPheromoneValue, waitTime);
 
         int nextWait;
-        if (maxWait.getLeft() == 0) {
-            nextWait = waitTime.intValue();
+        if (maxWait == 0) {
+            nextWait = waitTime;
         } else {
-            nextWait = rand.nextInt(maxWait.getLeft()) + waitTime.intValue();
+            nextWait = rand.nextInt(maxWait) + waitTime;
         }
 
-        for (HddVm unknownServ : unknown) {
+        for (HddVm unknownServ : knownServers) {
+            if (visitHistory.slotOf(unknownServ.getId()) != VisitHistory.NOT_VISITED) {
+                continue;
+            }
             if (unknownServ.equals(currentVM)) {
-                visitHistory.put(unknownServ, Pair.of(0, newPheromoneValue));
+                visitHistory.put(unknownServ.getId(), 0, newPheromoneValue);
             } else {
-                visitHistory.put(unknownServ, Pair.of(nextWait, 0d));
+                visitHistory.put(unknownServ.getId(), nextWait, 0d);
             }
         }
 
-        return waitTime.intValue();
+        return waitTime;
+    }
+
+    HddVm jumpNextNode(HddVm currentVM, List<HddVm> knownServers) {
+        int index = jumpNextIndex(currentVM, knownServers);
+        return index < 0 ? currentVM : knownServers.get(index);
     }
 
-    private HddVm jumpNextNode(HddVm currentVM, List<HddVm> knownServers) {
-        Random rand = new Random();
+    /**
+     * @return the index in the known servers of the next server, or -1 if the ant stays on the current server
+     */
+    private int jumpNextIndex(HddVm currentVM, List<HddVm> knownServers) {
         int sumOfTimes = 0;
-        Double sumOfPheromones = 0d;
-        LinkedMap<HddVm, Double> probTable = new LinkedMap<>();
+        double sumOfPheromones = 0d;
 
         if (knownServers.size() <= 1) {
-            return currentVM;
+            return -1;
         }
 
-        for (Map.Entry<HddVm, Pair<Integer, Double>> serverDatum : visitHistory.entrySet()) {
-            if (knownServers.contains(serverDatum.getKey()) && !serverDatum.getKey().equals(currentVM)) {
-                sumOfTimes += serverDatum.getValue().getLeft();
-                sumOfPheromones += serverDatum.getValue().getRight();
+        // history slot of every known server, looked up once
+        if (knownSlots.length < knownServers.size()) {
+            knownSlots = new int[Math.max(knownServers.size(), knownSlots.length * 2)];
+        }
+        for (int i = 0; i < knownServers.size(); i++) {
+            HddVm server = knownServers.get(i);
+            int slot = server.equals(currentVM) ? VisitHistory.NOT_VISITED : visitHistory.slotOf(server.getId());
+            knownSlots[i] = slot;
+            if (slot != VisitHistory.NOT_VISITED) {
+                sumOfTimes += visitHistory.getTime(slot);
+                sumOfPheromones += visitHistory.getPheromone(slot);
             }
         }
 
-        for (Map.Entry<HddVm, Pair<Integer, Double>> serverDatum : visitHistory.entrySet()) {
-            if (knownServers.contains(serverDatum.getKey()) && !serverDatum.getKey().equals(currentVM)) {
-                Double randValue = ((serverDatum.getValue().getLeft().doubleValue() / sumOfTimes) + (serverDatum.getValue().getRight() / sumOfPheromones)) / 2;
-                if (sumOfPheromones == 0) {
-                    randValue = (serverDatum.getValue().getLeft().doubleValue() / sumOfTimes);
+        // the sampler normalizes by the sum of weights, so the probabilities are the same as the normalized table
+        sampler.clear();
+        for (int i = 0; i < knownServers.size(); i++) {
+            int slot = knownSlots[i];
+            if (slot != VisitHistory.NOT_VISITED) {
+                double weight;
+                if (sumOfTimes == 0 && sumOfPheromones == 0) {
+                    weight = 1;
+                } else if (sumOfPheromones == 0) {
+                    weight = visitHistory.getTime(slot) / (double) sumOfTimes;
+                } else if (sumOfTimes == 0) {
+                    weight = visitHistory.getPheromone(slot) / sumOfPheromones;
+                } else {
+                    weight = ((visitHistory.getTime(slot) / (double) sumOfTimes) + (visitHistory.getPheromone(slot) / sumOfPheromones)) / 2;
                 }
-                probTable.put(serverDatum.getKey(), randValue);
+                sampler.add(i, weight);
             }
         }
 
-        probTable = probTable.entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByValue(/*Collections.reverseOrder()*/))
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1,
-                        LinkedMap::new
-                ));
-
-        Double random = rand.nextDouble();
-        Double sumOfProbs = 0d;
-        Double lastProb = 0d;
-
-        for (Map.Entry<HddVm, Double> prob : probTable.entrySet()) {
-            if (lastProb < random && random < sumOfProbs + prob.getValue()) {
-                return prob.getKey();
-            } else {
-                sumOfProbs += prob.getValue();
-                lastProb = prob.getValue();
-            }
+        if (sampler.size() == 0) {
+            return -1;
         }
 
-        return probTable.lastKey();
+        return sampler.sample(rand.nextDouble());
+    }
+
+    /**
+     * Forgets the visited servers, used when the ant migrates to another shard of the colony. The pheromone memory
+     * is kept.
+     */
+    void forgetVisits() {
+        visitHistory.clear();
     }
 
     HddVm getNextNode() {
         return nextNode;
     }
 
+    /**
+     * @return the index of the next server in the known servers of the last step, or -1 if the ant stays
+     */
+    int getNextNodeIndex() {
+        return nextNodeIndex;
+    }
+
     Morph morph() {
-        Double sum = antMemory.values().stream().mapToDouble(x -> x).sum();
+        double average = getAveragePheromone();
 
-        if ((sum / antMemory.size()) < config.getMinMorphLevel()) {
+        if (average < config.getMinMorphLevel()) {
             return Morph.MaxMorph;
-        } else if  ((sum / antMemory.size()) > config.getMaxMorphLevel()) {
+        } else if  (average > config.getMaxMorphLevel()) {
             return Morph.MinMorph;
         } else {
             return Morph.NoMorph;
         }
     }
 
-    Double getMorphValue() {
-        Double sum = antMemory.values().stream().mapToDouble(x -> x).sum();
-
-        return sum / antMemory.size();
+    double getMorphValue() {
+        return getAveragePheromone();
     }
 
-    Double evaluateFitness(HHAntOptimizer.Nest nest, int originalSize, double maxPher, double optimalPher) {
+    double evaluateFitness(HHAntOptimizer.Nest nest, int originalSize, double maxPher, double optimalPher) {
         double scaleFactor = nest.getServerCount() / (double) originalSize;
 
         double avgPher;
 
         if (scaleFactor < 1) {
             // server removal case
-            int scaledRemainingServers = Double.valueOf(antMemory.size() * scaleFactor).intValue();
+            int scaledRemainingServers = (int) (antMemory.size() * scaleFactor);
 
             double remainingPher = 0;
 
-            Iterator<Double> iter = antMemory.values().iterator();
-
             for (int i = 0; i < scaledRemainingServers; i++) {
-                remainingPher += iter.next();
+                remainingPher += antMemory.getValue(i);
             }
             
             avgPher = remainingPher / antMemory.size();
         } else {
             // server addition
             double scaledAddedServers = (nest.getServerCount() - (double) originalSize) / nest.getServerCount();
-            int scaledBackHistory = Double.valueOf(scaledAddedServers * antMemory.size()).intValue();
+            int scaledBackHistory = (int) (scaledAddedServers * antMemory.size());
 
             double totalPher = 0;
             double addPher = 0;
 
-            Iterator<Double> iter = antMemory.values().iterator();
-
             for (int i = 0; i < scaledBackHistory; i++) {
                 addPher += optimalPher;
             }
             for (int i = scaledBackHistory; i < antMemory.size(); i++) {
-                totalPher += iter.next();
+                totalPher += antMemory.getValue(i - scaledBackHistory);
             }
 
             avgPher = (totalPher + addPher) / scaledAddedServers;
@@ -217,7 +223,7 @@ public class Ant implements Comparable<Ant> {
     }
 
     double getAveragePheromone() {
-        return antMemory.values().stream().mapToDouble(x -> x).sum()/antMemory.size();
+        return antMemory.sum() / antMemory.size();
     }
 
     @Override
@@ -241,4 +247,189 @@ public class Ant implements Comparable<Ant> {
     /*public void reinit() {
         antMemory.clear();
     }*/
+
+    /**
+     * Fixed capacity ring buffer of the last visited server ids and the pheromone left there, oldest first. Putting
+     * an id already in memory updates its value in place, same as the insertion ordered map it replaces.
+     */
+    private static final class Memory {
+        private final int[] ids;
+        private final double[] values;
+        private int head = 0;
+        private int size = 0;
+
+        Memory(int capacity) {
+            ids = new int[capacity];
+            values = new double[capacity];
+        }
+
+        Memory(Memory other) {
+            ids = other.ids.clone();
+            values = other.values.clone();
+            head = other.head;
+            size = other.size;
+        }
+
+        void put(int id, double value) {
+            if (ids.length == 0) {
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                int idx = index(i);
+                if (ids[idx] == id) {
+                    values[idx] = value;
+                    return;
+                }
+            }
+            if (size == ids.length) {
+                // evict the oldest entry
+                head = index(1);
+                size--;
+            }
+            int idx = index(size);
+            ids[idx] = id;
+            values[idx] = value;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        double getValue(int i) {
+            return values[index(i)];
+        }
+
+        double sum() {
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += values[index(i)];
+            }
+            return sum;
+        }
+
+        private int index(int i) {
+            return (head + i) % ids.length;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("{");
+            for (int i = 0; i < size; i++) {
+                sb.append(i == 0 ? "" : ", ").append(ids[index(i)]).append('=').append(values[index(i)]);
+            }
+            return sb.append('}').toString();
+        }
+    }
+
+    /**
+     * Time since last visit and last seen pheromone level per server, in arrays indexed by a slot per visited server
+     * id, found through an open addressing table. Only the servers the ant knows take space, so that an ant of a
+     * sharded colony needs memory for its shard whatever the VM ids. Entries are only removed all at once.
+     */
+    private static final class VisitHistory {
+        static final int NOT_VISITED = -1;
+
+        private int[] ids = new int[8];
+        private int[] times = new int[8];
+        private double[] pheromones = new double[8];
+        private int size = 0;
+        // slot + 1 of the id hashed to each bucket, 0 for an empty bucket, kept at most half full
+        private int[] table = new int[16];
+
+        /**
+         * @return the slot of the server id, or NOT_VISITED
+         */
+        int slotOf(int id) {
+            int mask = table.length - 1;
+            for (int bucket = hash(id) & mask; table[bucket] != 0; bucket = (bucket + 1) & mask) {
+                if (ids[table[bucket] - 1] == id) {
+                    return table[bucket] - 1;
+                }
+            }
+            return NOT_VISITED;
+        }
+
+        int getTime(int slot) {
+            return times[slot];
+        }
+
+        double getPheromone(int slot) {
+            return pheromones[slot];
+        }
+
+        void put(int id, int time, double pheromone) {
+            int slot = slotOf(id);
+            if (slot == NOT_VISITED) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                    times = Arrays.copyOf(times, size * 2);
+                    pheromones = Arrays.copyOf(pheromones, size * 2);
+                }
+                slot = size++;
+                ids[slot] = id;
+                if (size * 2 > table.length) {
+                    table = new int[table.length * 2];
+                    for (int i = 0; i < size; i++) {
+                        insert(i);
+                    }
+                } else {
+                    insert(slot);
+                }
+            }
+            times[slot] = time;
+            pheromones[slot] = pheromone;
+        }
+
+        void clear() {
+            Arrays.fill(table, 0);
+            size = 0;
+        }
+
+        int getMaxTime() {
+            int max = 0;
+            for (int i = 0; i < size; i++) {
+                max = Math.max(max, times[i]);
+            }
+            return max;
+        }
+
+        /**
+         * Resets the current server to just visited and ages every other server by the given wait time.
+         */
+        void age(int currentId, double currentPheromone, int waitTime) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == currentId) {
+                    times[i] = 0;
+                    pheromones[i] = currentPheromone;
+                } else {
+                    times[i] += waitTime;
+                }
+            }
+        }
+
+        private void insert(int slot) {
+            int mask = table.length - 1;
+            int bucket = hash(ids[slot]) & mask;
+            while (table[bucket] != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+            table[bucket] = slot + 1;
+        }
+
+        private static int hash(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("{");
+            for (int i = 0; i < size; i++) {
+                sb.append(i == 0 ? "" : ", ").append(ids[i]).append("=(").append(times[i]).append(',')
+                        .append(pheromones[i]).append(')');
+            }
+            return sb.append('}').toString();
+        }
+    }
 }
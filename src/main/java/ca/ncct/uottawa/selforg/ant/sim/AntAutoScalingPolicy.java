@@ -1,41 +1,58 @@
 package ca.ncct.uottawa.selforg.ant.sim;
 
+import ca.ncct.uottawa.selforg.ant.sim.telemetry.Telemetry;
+import ca.ncct.uottawa.selforg.ant.sim.telemetry.TelemetryWriter;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.ex.IAutoscalingPolicy;
 import org.cloudbus.cloudsim.ex.MonitoringBorkerEX;
 import org.cloudbus.cloudsim.ex.disk.HddCloudletSchedulerTimeShared;
 import org.cloudbus.cloudsim.ex.disk.HddVm;
 import org.cloudbus.cloudsim.ex.util.CustomLog;
-import org.cloudbus.cloudsim.ex.vm.VMStatus;
 import org.cloudbus.cloudsim.ex.web.ILoadBalancer;
 import org.cloudbus.cloudsim.ex.web.workload.brokers.WebBroker;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
 class AntAutoScalingPolicy implements IAutoscalingPolicy {
 
-    private Map<Ant, HddVm> antToServer = new HashMap<>();
-    private Map<HddVm, Double> pherLevels = new HashMap<>();
+    // the colony in the order the ants were added, so that a seeded run steps the ants in the same order every time,
+    // and the slot in the pheromone field of the server each ant is on
+    private List<Ant> ants = new ArrayList<>();
+    private int[] antSlots = new int[16];
+    private PheromoneField pherLevels;
     private StringBuilder debugSB = new StringBuilder();
+    private MonitoringSnapshot snapshot = new MonitoringSnapshot();
     private long appId;
     private AntSystemConfig config = null;
     private double lastTime = 0;
     private double nextDecay = 0;
     private IAntOptimizer optimizer;
+    private SplittableRandom random;
     private double nextLog = 0;
+    private double cooldownEnd = 0;
 
     private static final int LOG_RATE = 60;
 
     AntAutoScalingPolicy(Properties antControlProps, long appId, IAntOptimizer optimizer) {
         this.appId = appId;
         this.config = new AntSystemConfig(antControlProps);
+        this.pherLevels = new PheromoneField(config.getDecayAmount());
         this.optimizer = optimizer;
+        this.random = config.getSeed() == null ? new SplittableRandom() : new SplittableRandom(config.getSeed());
+        this.optimizer.setRandom(random.split());
     }
 
     @Override
     public void scale(MonitoringBorkerEX broker) {
-        double currentTime = CloudSim.clock();
+        scale(broker, CloudSim.clock());
+    }
 
+    /**
+     * One control tick at the given simulation time, the benchmarks drive the policy through this without a running
+     * simulation.
+     */
+    void scale(MonitoringBorkerEX broker, double currentTime) {
         if (broker instanceof WebBroker) {
             this.debugSB.setLength(0);
             WebBroker webBroker = (WebBroker) broker;
@@ -44,77 +61,78 @@ class AntAutoScalingPolicy implements IAutoscalingPolicy {
             List<HddVm> appServers = loadBalancer.getAppServers();
 
             // no ants in system, this must be the first auto scaling call
-            if (antToServer.isEmpty()) {
+            if (ants.isEmpty()) {
                 initializeAnts(appServers);
             } else {
-                double diffTime = currentTime - lastTime;
-                Map<Ant, HddVm> updatedMoves = new HashMap<>();
-                int maxMorphCount = 0;
-                int minMorphCount = 0;
-                int noMorphCount = 0;
-
-                for (HddVm vm : appServers) {
-                    Set<Integer> sessions = webBroker.getSessionsInServer(vm.getId());
-
-                    this.debugSB.append(vm);
-                    this.debugSB.append("[").append(vm.getStatus().name()).append("] ");
-                    this.debugSB.append(String.format("sessions(%d) ", sessions.size()));
-                    this.debugSB.append(String.format("cpu(%.2f) ram(%.2f) cdlts(%d);\t", new Object[]{Double.valueOf(vm.getCPUUtil()), Double.valueOf(vm.getRAMUtil()), Integer.valueOf(vm.getCloudletScheduler().getCloudletExecList().size())}));
-                }
+                this.snapshot.capture(webBroker, appServers, false);
+                Tick tick = new Tick(appServers, currentTime - lastTime);
 
-                for (Ant ant : antToServer.keySet()) {
-                    HddVm currServer = antToServer.get(ant);
-                    Double newPher = ant.controlStep(currServer, pherLevels.get(currServer),
-                            Math.min(currServer.getCPUUtil(), 1d), appServers, diffTime);
-                    if (newPher != null) {
-                        /*CustomLog.printf("Ant-Autoscale(%s) ant: %d adding pheromone %f to server %d and going to %d",
-                                broker, ant.getUid(), newPher, currServer.getId(), ant.getNextNode().getId());*/
-                        pherLevels.put(currServer, newPher);
-                        updatedMoves.put(ant, ant.getNextNode());
+                if (config.isParallelAntSteps()) {
+                    stepAntsInParallel(tick);
+                } else {
+                    for (int i = 0; i < ants.size(); i++) {
+                        int slot = antSlots[i];
+                        double newPher = ants.get(i).controlStep(pherLevels.getServer(slot), pherLevels.get(slot),
+                                Math.min(tick.cpuOf(slot), 1d), tick.shards.get(tick.shardOf(slot)), tick.diffTime);
+                        mergeStep(i, newPher, tick);
                     }
-                    switch(ant.morph()) {
-                        case MaxMorph:
-                            maxMorphCount++;
-                            break;
-                        case MinMorph:
-                            minMorphCount++;
-                            break;
-                        default:
-                            noMorphCount++;
-                            break;
+                }
+
+                // every shard with ants votes the way most of its ants morph, the colony scales the way most shards vote
+                int[] votes = new int[Morph.values().length];
+                for (int[] shardVote : tick.shardVotes) {
+                    if (shardVote[Morph.MaxMorph.ordinal()] + shardVote[Morph.MinMorph.ordinal()]
+                            + shardVote[Morph.NoMorph.ordinal()] > 0) {
+                        votes[vote(shardVote).ordinal()]++;
                     }
-                    /*CustomLog.printf("Ant-Autoscale(%s) ant: %d morph type: %s with value %f",
-                            broker, ant.getUid(), ant.morph().toString(), ant.getMorphValue());*/
+                }
+                Morph decision = vote(votes);
+                // with a cooldown the ants keep stepping, but the colony only scales again once the servers of the last
+                // scale action are running and the ants had the cooldown to see the load move
+                if (decision != Morph.NoMorph && config.getScaleCooldown() > 0
+                        && (currentTime < cooldownEnd || snapshot.hasInitialising())) {
+                    decision = Morph.NoMorph;
                 }
 
-                antToServer.putAll(updatedMoves);
+                for (int i = 0; i < ants.size(); i++) {
+                    if (tick.moves[i] != PheromoneField.NO_SLOT) {
+                        antSlots[i] = tick.moves[i];
+                    }
+                }
 
                 if (nextDecay <= currentTime) {
-                    pherLevels.replaceAll((k, v) -> Math.max(0, v - config.getDecayAmount()));
+                    pherLevels.decay();
                     nextDecay = currentTime + config.getDecayRate();
                 }
 
-                pherLevels.forEach((k, v) -> debugSB.append("pheromone(").append(k.getId()).append('=').append(v).append(") "));
-                antToServer.forEach((k, v) -> debugSB.append("antToServer(").append(k.getUid()).append('=').append(v.getId()).append(") "));
-
                 if (nextLog <= currentTime) {
-                    CustomLog.printf("Ant-Autoscale(%s) pheromone levels: %s", broker, this.debugSB);
+                    // the telemetry stream carries the pheromone levels, the text dump is only written without it
+                    if (Telemetry.isEnabled()) {
+                        writeTelemetry(Telemetry.getWriter(), currentTime);
+                    } else {
+                        CustomLog.printf("Ant-Autoscale(%s) pheromone levels: %s", broker, renderDebug());
+                    }
+                    if (RunMetrics.isEnabled()) {
+                        RunMetrics.record(currentTime, snapshot, 1);
+                    }
                     nextLog = currentTime + LOG_RATE;
                 }
 
-                if (maxMorphCount > noMorphCount + minMorphCount) {
-                    CustomLog.printf("Ant-Autoscale(%s) Scale-Up servers: %s", broker, this.debugSB);
-                    optimizer.setAnts(antToServer.keySet());
+                if (decision == Morph.MaxMorph) {
+                    CustomLog.printf("Ant-Autoscale(%s) Scale-Up servers: %s", broker, renderScaleServers());
+                    optimizer.setAnts(new LinkedHashSet<>(ants));
                     optimizer.setPheromones((double) config.getMaxMorphLevel(),
                             (config.getMaxMorphLevel() + config.getMinMorphLevel()) / 2d);
                     addServers(optimizer.getAddServers(), loadBalancer, webBroker);
-                } else if (minMorphCount > noMorphCount + maxMorphCount) {
-                    optimizer.setAnts(antToServer.keySet());
+                    cooldownEnd = currentTime + config.getScaleCooldown();
+                } else if (decision == Morph.MinMorph) {
+                    optimizer.setAnts(new LinkedHashSet<>(ants));
                     optimizer.setPheromones((double) config.getMaxMorphLevel(),
                             (config.getMaxMorphLevel() + config.getMinMorphLevel()) / 2d);
-                    if (antToServer.size() > 1) {
-                        CustomLog.printf("Ant-Autoscale(%s) Scale-Down servers: %s", broker, this.debugSB);
+                    if (ants.size() > 1) {
+                        CustomLog.printf("Ant-Autoscale(%s) Scale-Down servers: %s", broker, renderScaleServers());
                         removeServers(optimizer.getRemoveServers(), loadBalancer, webBroker);
+                        cooldownEnd = currentTime + config.getScaleCooldown();
                     }
                 } /*else {
                     CustomLog.printf("Ant-Autoscale(%s) no change: %s", broker, this.debugSB);
@@ -125,57 +143,221 @@ class AntAutoScalingPolicy implements IAutoscalingPolicy {
         lastTime = currentTime;
     }
 
+    /**
+     * Steps the ants of different servers in parallel on the common fork join pool, then merges the steps in colony
+     * order. The ants on a server read the level the previous ant on the server left, as in the sequential loop, so
+     * they step one after the other in colony order. Since every ant has its own random stream and the merge draws
+     * the migrations in colony order, a seeded run gives the same results as the sequential loop.
+     */
+    private void stepAntsInParallel(Tick tick) {
+        // group the ants by server slot, in colony order within a group
+        int[] slotGroups = new int[pherLevels.getSlotCount()];
+        Arrays.fill(slotGroups, -1);
+        int[] groupSlots = new int[ants.size()];
+        int[] groupStarts = new int[ants.size() + 1];
+        int[] antGroups = new int[ants.size()];
+        int groupCount = 0;
+        for (int i = 0; i < ants.size(); i++) {
+            int slot = antSlots[i];
+            if (slotGroups[slot] < 0) {
+                slotGroups[slot] = groupCount;
+                groupSlots[groupCount++] = slot;
+            }
+            antGroups[i] = slotGroups[slot];
+            groupStarts[antGroups[i] + 1]++;
+        }
+        for (int g = 0; g < groupCount; g++) {
+            groupStarts[g + 1] += groupStarts[g];
+        }
+        int[] members = new int[ants.size()];
+        int[] next = Arrays.copyOf(groupStarts, groupCount);
+        for (int i = 0; i < ants.size(); i++) {
+            members[next[antGroups[i]]++] = i;
+        }
+
+        // read phase, the levels are brought up to date here so that the parallel steps do not write the field
+        double[] levels = new double[groupCount];
+        for (int g = 0; g < groupCount; g++) {
+            levels[g] = pherLevels.get(groupSlots[g]);
+        }
+
+        double[] steps = new double[ants.size()];
+        IntStream.range(0, groupCount).parallel().forEach(g -> {
+            HddVm server = pherLevels.getServer(groupSlots[g]);
+            List<HddVm> neighbourhood = tick.shards.get(tick.shardOf(groupSlots[g]));
+            double fuzzyFactor = Math.min(tick.cpuOf(groupSlots[g]), 1d);
+            double level = levels[g];
+            for (int m = groupStarts[g]; m < groupStarts[g + 1]; m++) {
+                int ant = members[m];
+                steps[ant] = ants.get(ant).controlStep(server, level, fuzzyFactor, neighbourhood, tick.diffTime);
+                if (!Double.isNaN(steps[ant])) {
+                    level = steps[ant];
+                }
+            }
+        });
+
+        // merge phase, the last ant to step on a server sets its level
+        for (int i = 0; i < ants.size(); i++) {
+            mergeStep(i, steps[i], tick);
+        }
+    }
+
+    /**
+     * Applies the step of the i-th ant: its new pheromone level on the current server and its move, if it did not
+     * wait, and its morph vote.
+     */
+    private void mergeStep(int i, double newPher, Tick tick) {
+        Ant ant = ants.get(i);
+        int slot = antSlots[i];
+        int shard = tick.shardOf(slot);
+        if (!Double.isNaN(newPher)) {
+            /*CustomLog.printf("Ant-Autoscale ant: %d adding pheromone %f to server %d and going to %d",
+                    ant.getUid(), newPher, pherLevels.getServer(slot).getId(), ant.getNextNode().getId());*/
+            pherLevels.put(slot, newPher);
+            if (tick.shards.size() > 1 && random.nextDouble() < config.getShardMigrationRate()) {
+                tick.moves[i] = migrate(ant, tick, shard);
+            } else if (ant.getNextNodeIndex() < 0) {
+                tick.moves[i] = slot;
+            } else {
+                tick.moves[i] = tick.slotAt(tick.shardStarts[shard] + ant.getNextNodeIndex());
+            }
+        }
+        tick.shardVotes[shard][ant.morph().ordinal()]++;
+        /*CustomLog.printf("Ant-Autoscale ant: %d morph type: %s with value %f",
+                ant.getUid(), ant.morph().toString(), ant.getMorphValue());*/
+    }
+
+    /**
+     * @return MaxMorph or MinMorph if it has more votes than the two other morphs together, NoMorph otherwise
+     */
+    private static Morph vote(int[] votes) {
+        int max = votes[Morph.MaxMorph.ordinal()];
+        int min = votes[Morph.MinMorph.ordinal()];
+        int none = votes[Morph.NoMorph.ordinal()];
+        if (max > none + min) {
+            return Morph.MaxMorph;
+        } else if (min > none + max) {
+            return Morph.MinMorph;
+        }
+        return Morph.NoMorph;
+    }
+
+    /**
+     * @return the slot of a random server of a random other shard, which the ant explores from scratch
+     */
+    private int migrate(Ant ant, Tick tick, int shard) {
+        int target = random.nextInt(tick.shards.size() - 1);
+        if (target >= shard) {
+            target++;
+        }
+        ant.forgetVisits();
+        return tick.slotAt(tick.shardStarts[target] + random.nextInt(tick.shards.get(target).size()));
+    }
+
+    /**
+     * @return the pheromone levels for a scale-action line, or only the number of servers when the levels already go
+     * to the telemetry stream
+     */
+    private Object renderScaleServers() {
+        return Telemetry.isEnabled() ? Integer.valueOf(ants.size()) : renderDebug();
+    }
+
+    /**
+     * Renders the server snapshot, pheromone levels and ant positions of this tick, at most once per tick.
+     */
+    private StringBuilder renderDebug() {
+        if (debugSB.length() == 0) {
+            snapshot.render(debugSB);
+            pherLevels.forEach((k, v) -> debugSB.append("pheromone(").append(k.getId()).append('=').append(v).append(") "));
+            for (int i = 0; i < ants.size(); i++) {
+                debugSB.append("antToServer(").append(ants.get(i).getUid()).append('=')
+                        .append(pherLevels.getServer(antSlots[i]).getId()).append(") ");
+            }
+        }
+        return debugSB;
+    }
+
+    private void writeTelemetry(TelemetryWriter writer, double time) {
+        snapshot.writeTo(writer, time);
+        writer.beginPheromone(time, pherLevels.size());
+        pherLevels.forEach((k, v) -> writer.pheromone(k.getId(), v));
+        writer.beginAnts(time, ants.size());
+        for (int i = 0; i < ants.size(); i++) {
+            writer.ant(ants.get(i).getUid(), pherLevels.getServer(antSlots[i]).getId());
+        }
+    }
+
     private void removeServers(int removeCount, ILoadBalancer loadBalancer, WebBroker webBroker) {
         CustomLog.printf("Ant-Autoscale actuating removing servers: %s", removeCount);
+        // the first active servers, the snapshot of this tick has every app server in order
         List<HddVm> removeServers = new ArrayList<>();
-        for (int i = 0; i < removeCount; i++) {
-            for (HddVm vm : loadBalancer.getAppServers()) {
-                if (EnumSet.of(VMStatus.INITIALISING, VMStatus.RUNNING).contains(vm.getStatus()) && !removeServers.contains(vm)) {
-                    removeServers.add(vm);
-                    break;
-                }
+        for (int i = 0; i < snapshot.size() && removeServers.size() < removeCount; i++) {
+            if (snapshot.isActive(i)) {
+                removeServers.add(snapshot.getServer(i));
             }
         }
         webBroker.destroyVMsAfter(removeServers, 0.0D);
         loadBalancer.getAppServers().removeAll(removeServers);
-        antToServer.clear();
-        pherLevels.clear();
+        removeAnts(removeServers);
+        if (Telemetry.isEnabled()) {
+            Telemetry.getWriter().scale(CloudSim.clock(), -removeServers.size());
+        }
     }
 
-    /*private void removeAnts(List<HddVm> removeServers) {
+    /**
+     * Retires one ant per removed server, preferring the ants sitting on the removed servers, and moves the
+     * remaining ants on removed servers to a random remaining server. Pheromone of the remaining servers and the
+     * memory of the remaining ants are kept.
+     */
+    private void removeAnts(List<HddVm> removeServers) {
         int removeCount = removeServers.size();
-        List<Ant> antsToRemove = new ArrayList<>();
+        boolean[] retired = new boolean[ants.size()];
+        int retiredCount = 0;
 
-        for (Ant ant : antToServer.keySet()) {
-            if (removeServers.contains(antToServer.get(ant)) && removeCount > 0) {
-                antsToRemove.add(ant);
-                removeCount--;
+        for (int i = 0; i < ants.size() && retiredCount < removeCount; i++) {
+            if (removeServers.contains(pherLevels.getServer(antSlots[i]))) {
+                retired[i] = true;
+                retiredCount++;
             }
         }
 
-        for (Ant ant : antsToRemove) {
-            antToServer.remove(ant);
+        // not enough ants on the removed servers, retire the most recently added ants to keep one ant per server
+        for (int i = ants.size() - 1; i >= 0 && retiredCount < removeCount; i--) {
+            if (!retired[i]) {
+                retired[i] = true;
+                retiredCount++;
+            }
         }
 
+        int size = 0;
+        for (int i = 0; i < ants.size(); i++) {
+            if (!retired[i]) {
+                ants.set(size, ants.get(i));
+                antSlots[size++] = antSlots[i];
+            }
+        }
+        ants.subList(size, ants.size()).clear();
+
+        boolean[] removedSlots = new boolean[pherLevels.getSlotCount()];
         for (HddVm vm : removeServers) {
-            pherLevels.remove(vm);
+            int slot = pherLevels.slotOf(vm);
+            if (slot != PheromoneField.NO_SLOT) {
+                removedSlots[slot] = true;
+                pherLevels.remove(vm);
+            }
         }
 
         // we need to reassign ants which were on removed servers
-        int remaingSize = pherLevels.keySet().size();
-        Random rand = new Random();
-        for (Ant ant : antToServer.keySet()) {
-            if (!pherLevels.keySet().contains(antToServer.get(ant))) {
-                int count = rand.nextInt(remaingSize);
-                Iterator<HddVm> iter = pherLevels.keySet().iterator();
-                while (count > 0) {
-                    iter.next();
-                    count--;
-                }
-                antToServer.put(ant, iter.next());
+        List<HddVm> remainingServers = pherLevels.getServers();
+        if (remainingServers.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < ants.size(); i++) {
+            if (removedSlots[antSlots[i]]) {
+                antSlots[i] = pherLevels.slotOf(remainingServers.get(random.nextInt(remainingServers.size())));
             }
         }
-    }*/
+    }
 
     private void addServers(int addCount, ILoadBalancer loadBalancer, WebBroker webBroker) {
         CustomLog.printf("Ant-Autoscale actuating adding servers: %s", addCount);
@@ -186,16 +368,116 @@ class AntAutoScalingPolicy implements IAutoscalingPolicy {
             newServers.add(newServ);
         }
         webBroker.createVmsAfter(newServers, 0.0D);
-        antToServer.clear();
-        pherLevels.clear();
+        initializeAnts(newServers);
+        if (Telemetry.isEnabled()) {
+            Telemetry.getWriter().scale(CloudSim.clock(), newServers.size());
+        }
     }
 
+    /**
+     * Adds an ant and the starting pheromone level for each of the given servers.
+     */
     private void initializeAnts(List<HddVm> appServers) {
-        Double startPherLevel = ((double) config.getMaxMorphLevel() + config.getMinMorphLevel()) / 2;
+        double startPherLevel = getStartPheromone();
         for (HddVm vm : appServers) {
-            Ant ant = new Ant(vm.getId(), config);
-            antToServer.put(ant, vm);
-            pherLevels.put(vm, startPherLevel);
+            Ant ant = new Ant(vm.getId(), config, random.split());
+            if (ants.size() == antSlots.length) {
+                antSlots = Arrays.copyOf(antSlots, ants.size() * 2);
+            }
+            antSlots[ants.size()] = pherLevels.put(vm, startPherLevel);
+            ants.add(ant);
+        }
+    }
+
+    /**
+     * @return the pheromone level a new server starts with, the middle of the morph levels
+     */
+    private double getStartPheromone() {
+        return ((double) config.getMaxMorphLevel() + config.getMinMorphLevel()) / 2;
+    }
+
+    /**
+     * The app servers of a tick: their slots in the pheromone field, the shards they are split into and the steps of
+     * the ants.
+     */
+    private final class Tick {
+        private final List<HddVm> appServers;
+        private final double diffTime;
+        private final int[] serverSlots;
+        // cpu utilisation per slot in the snapshot, NaN for a server which is not an app server
+        private final double[] slotCpu;
+        // shard i is the app servers from shardStarts[i] to shardStarts[i + 1]
+        private final int[] shardStarts;
+        private final List<List<HddVm>> shards;
+        // shard per slot, null for a single shard
+        private final int[] slotShards;
+        private final int[][] shardVotes;
+        // slot each ant moves to, NO_SLOT if it waits
+        private final int[] moves;
+
+        /**
+         * Splits the servers into neighbourhoods of consecutive servers of about the configured shard size, which the
+         * ants of a shard stay in. A single shard of all servers if sharding is off.
+         */
+        Tick(List<HddVm> appServers, double diffTime) {
+            this.appServers = appServers;
+            this.diffTime = diffTime;
+            serverSlots = new int[appServers.size()];
+            slotCpu = new double[pherLevels.getSlotCount()];
+            Arrays.fill(slotCpu, Double.NaN);
+            for (int i = 0; i < appServers.size(); i++) {
+                serverSlots[i] = pherLevels.slotOf(appServers.get(i));
+                if (serverSlots[i] != PheromoneField.NO_SLOT) {
+                    slotCpu[serverSlots[i]] = snapshot.getCpu(i);
+                }
+            }
+
+            int shardSize = config.getShardSize();
+            int count = shardSize <= 0 ? 1 : Math.max(1, (appServers.size() + shardSize - 1) / shardSize);
+            shardStarts = new int[count + 1];
+            shards = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                shardStarts[i + 1] = (i + 1) * appServers.size() / count;
+                shards.add(appServers.subList(shardStarts[i], shardStarts[i + 1]));
+            }
+            if (count > 1) {
+                slotShards = new int[pherLevels.getSlotCount()];
+                for (int i = 0; i < count; i++) {
+                    for (int j = shardStarts[i]; j < shardStarts[i + 1]; j++) {
+                        if (serverSlots[j] != PheromoneField.NO_SLOT) {
+                            slotShards[serverSlots[j]] = i;
+                        }
+                    }
+                }
+            } else {
+                slotShards = null;
+            }
+            shardVotes = new int[count][Morph.values().length];
+            moves = new int[ants.size()];
+            Arrays.fill(moves, PheromoneField.NO_SLOT);
+        }
+
+        /**
+         * @return the cpu utilisation of the server in the slot, from the snapshot if it is an app server
+         */
+        double cpuOf(int slot) {
+            double cpu = slot < slotCpu.length ? slotCpu[slot] : Double.NaN;
+            return Double.isNaN(cpu) ? pherLevels.getServer(slot).getCPUUtil() : cpu;
+        }
+
+        int shardOf(int slot) {
+            return slotShards == null || slot >= slotShards.length ? 0 : slotShards[slot];
+        }
+
+        /**
+         * @return the slot of the app server at the index, adding the server to the field with the start level if it
+         * is not there yet
+         */
+        int slotAt(int index) {
+            if (serverSlots[index] == PheromoneField.NO_SLOT) {
+                serverSlots[index] = pherLevels.put(appServers.get(index), getStartPheromone());
+            }
+            return serverSlots[index];
         }
     }
 }
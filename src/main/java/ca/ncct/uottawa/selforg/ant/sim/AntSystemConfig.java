@@ -15,6 +15,14 @@ public class AntSystemConfig {
     private final int maxMorphLevel;
     private final double maxBalanceLevel;
     private final double minBalanceLevel;
+    private final Long seed;
+    private final int houseHunts;
+    private final int houseHuntQuorum;
+    private final int maxRecruitmentPhases;
+    private final int shardSize;
+    private final double shardMigrationRate;
+    private final boolean parallelAntSteps;
+    private final int scaleCooldown;
 
     public AntSystemConfig(Properties props) {
         decayAmount = Integer.parseInt(props.getProperty("decayAmount"));
@@ -26,6 +34,14 @@ public class AntSystemConfig {
         minMorphLevel = Integer.parseInt(props.getProperty("minMorphLevel"));
         maxBalanceLevel = Double.parseDouble(props.getProperty("maxBalanceLevel"));
         minBalanceLevel = Double.parseDouble(props.getProperty("minBalanceLevel"));
+        seed = props.containsKey("seed") ? Long.valueOf(props.getProperty("seed")) : null;
+        houseHunts = Integer.parseInt(props.getProperty("houseHunts", "1"));
+        houseHuntQuorum = Integer.parseInt(props.getProperty("houseHuntQuorum", String.valueOf(houseHunts / 2 + 1)));
+        maxRecruitmentPhases = Integer.parseInt(props.getProperty("maxRecruitmentPhases", "0"));
+        shardSize = Integer.parseInt(props.getProperty("shardSize", "0"));
+        shardMigrationRate = Double.parseDouble(props.getProperty("shardMigrationRate", "0"));
+        parallelAntSteps = Boolean.parseBoolean(props.getProperty("parallelAntSteps", "false"));
+        scaleCooldown = Integer.parseInt(props.getProperty("scaleCooldown", "0"));
     }
 
     public int getDecayAmount() {
@@ -63,4 +79,62 @@ public class AntSystemConfig {
     public double getMinBalanceLevel() {
         return minBalanceLevel;
     }
+
+    /**
+     * @return the seed of the ant system random streams for this run, or null for an unseeded run
+     */
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the number of independent house hunts the HH optimizer runs, 1 if not set
+     */
+    public int getHouseHunts() {
+        return houseHunts;
+    }
+
+    /**
+     * @return the number of settled house hunts which have to agree on the server count, within one server, before
+     * the hunts stop early, a majority of the hunts if not set
+     */
+    public int getHouseHuntQuorum() {
+        return houseHuntQuorum;
+    }
+
+    /**
+     * @return the maximum number of recruitment phases of a house hunt, 0 for no maximum if not set
+     */
+    public int getMaxRecruitmentPhases() {
+        return maxRecruitmentPhases;
+    }
+
+    /**
+     * @return the number of servers per shard of the ant colony, 0 for a single colony over all servers if not set
+     */
+    public int getShardSize() {
+        return shardSize;
+    }
+
+    /**
+     * @return the probability that a moving ant migrates to another shard instead, 0 if not set
+     */
+    public double getShardMigrationRate() {
+        return shardMigrationRate;
+    }
+
+    /**
+     * @return whether the ants of a tick step in parallel, false if not set
+     */
+    public boolean isParallelAntSteps() {
+        return parallelAntSteps;
+    }
+
+    /**
+     * @return the seconds after a scale action in which the colony does not scale again, nor while a server is still
+     * booting, 0 for no cooldown if not set
+     */
+    public int getScaleCooldown() {
+        return scaleCooldown;
+    }
 }
@@ -3,10 +3,10 @@ package ca.ncct.uottawa.selforg.ant.sim;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
 
+import ca.ncct.uottawa.selforg.ant.sim.telemetry.Telemetry;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.ex.IAutoscalingPolicy;
 import org.cloudbus.cloudsim.ex.MonitoringBorkerEX;
@@ -27,6 +27,7 @@ import org.cloudbus.cloudsim.ex.web.workload.brokers.WebBroker;
 public class CompressedAutoscalingPolicy implements IAutoscalingPolicy {
 
     private StringBuilder debugSB = new StringBuilder();
+    private MonitoringSnapshot snapshot = new MonitoringSnapshot();
 
     private long appId;
     private double triggerCPU;
@@ -61,43 +62,46 @@ public class CompressedAutoscalingPolicy implements IAutoscalingPolicy {
             // Inspect the status of all AS VMs
             boolean debug = true;
             debugSB.setLength(0);
-            for (HddVm vm : loadBalancer.getAppServers()) {
-                avgCPU += vm.getCPUUtil();
-                if (!EnumSet.of(VMStatus.INITIALISING, VMStatus.RUNNING).contains(vm.getStatus())) {
-                    continue;
-                }
+            snapshot.capture(webBroker, loadBalancer.getAppServers(), true);
+            for (int i = 0; i < snapshot.size(); i++) {
+                HddVm vm = snapshot.getServer(i);
+                double vmCPU = snapshot.getCpu(i);
+                double vmRAM = snapshot.getRam(i);
+                avgCPU += vmCPU;
                 numAS++;
 
-                appendDebug(debugSB, vm, debug);
-                double vmCPU = vm.getCPUUtil();
-                double vmRAM = vm.getRAMUtil();
+                String label;
                 if (!usedASServers.contains(vm.getId())) {
                     freeVms.add(vm);
-                    appendDebug(debugSB, "[FREE, ", debug);
+                    label = "FREE, ";
                 } else if (vmCPU >= triggerCPU || vmRAM >= triggerRAM) {
                     numOverloaded++;
-                    appendDebug(debugSB, "[OVERLOADED, ", debug);
+                    label = "OVERLOADED, ";
                 } else {
-                    appendDebug(debugSB, "[", debug);
+                    label = MonitoringSnapshot.NO_LABEL;
                 }
-                appendFormatDebug(debugSB, debug, "%s] ", vm.getStatus());
-                appendFormatDebug(debugSB, debug, "cpu(%.2f) ram(%.2f) cdlts(%d);\t", vmCPU, vmRAM, vm
-                        .getCloudletScheduler().getCloudletExecList().size());
-
-                Set<Integer> sessions = webBroker.getSessionsInServer(vm.getId());
+                snapshot.setLabel(i, label);
+            }
 
-                this.debugSB.append(vm);
-                this.debugSB.append("[").append(vm.getStatus().name()).append("] ");
-                this.debugSB.append(String.format("sessions(%d) ", sessions.size()));
-                this.debugSB.append(String.format("cpu(%.2f) ram(%.2f) cdlts(%d);\t", new Object[]{Double.valueOf(vm.getCPUUtil()), Double.valueOf(vm.getRAMUtil()), Integer.valueOf(vm.getCloudletScheduler().getCloudletExecList().size())}));
+            // the telemetry stream replaces the server dumps, only the scale actions are still logged with it
+            boolean dump = !Telemetry.isEnabled();
+            if (dump && (debug || nextLog <= currentTime)) {
+                snapshot.renderLabelled(debugSB);
             }
 
-            if (debug) {
+            if (dump && debug) {
                 CustomLog.printf("Autoscale-Policy(%s): %s", broker, debugSB);
             }
 
             if (nextLog <= currentTime) {
-                CustomLog.printf("Compressed-Autoscale(%s) avg-cpu(%.2f): %s", new Object[]{broker, Double.valueOf(avgCPU), this.debugSB});
+                if (dump) {
+                    CustomLog.printf("Compressed-Autoscale(%s) avg-cpu(%.2f): %s", new Object[]{broker, Double.valueOf(avgCPU), this.debugSB});
+                } else {
+                    snapshot.writeTo(Telemetry.getWriter(), currentTime);
+                }
+                if (RunMetrics.isEnabled()) {
+                    RunMetrics.record(currentTime, snapshot, 2);
+                }
                 nextLog = currentTime + LOG_RATE;
             }
 
@@ -138,6 +142,9 @@ public class CompressedAutoscalingPolicy implements IAutoscalingPolicy {
                             toStop.toString());
                     webBroker.destroyVMsAfter(toStop, 0);
                     loadBalancer.getAppServers().removeAll(toStop);
+                    if (Telemetry.isEnabled()) {
+                        Telemetry.getWriter().scale(currentTime, -toStop.size());
+                    }
                 }
             }
         }
@@ -167,6 +174,9 @@ public class CompressedAutoscalingPolicy implements IAutoscalingPolicy {
             CustomLog.printf("Autoscale-Policy(%s) Scale-Up: New AS VMs provisioned: %s", webBroker.toString(),
                     newVMs.toString());
             webBroker.createVmsAfter(newVMs, 0);
+            if (Telemetry.isEnabled()) {
+                Telemetry.getWriter().scale(CloudSim.clock(), newVMs.size());
+            }
         }
     }
 
@@ -0,0 +1,146 @@
+package ca.ncct.uottawa.selforg.ant.sim;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs every simulation x policy x repetition of a simulation.props file in its own forked JVM.
+ * CloudSim and CustomLog keep global static state, so runs can not share a JVM, but they can run side by side
+ * in separate processes.
+ *
+ * Usage: ExperimentRunner simulation.props [workers] [policy,policy,...]
+ */
+public class ExperimentRunner {
+
+    public static void main(String[] args) throws Exception {
+        Path basePath = Paths.get(args[0]);
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        List<String> types = args.length > 2 ? Arrays.asList(args[2].split(","))
+                : new ArrayList<>(Simulation.POLICIES.keySet());
+
+        Properties props = Simulation.loadProperties(basePath);
+        List<Run> runs = new ArrayList<>();
+        for (Map.Entry<Object, Object> entry : props.entrySet()) {
+            String simName = (String) entry.getKey();
+            String outputProperties = ((String) entry.getValue()).split(",")[2].trim();
+            String logPath = Simulation.loadProperties(basePath.getParent().resolve(outputProperties))
+                    .getProperty("FilePath");
+            for (String type : types) {
+                for (int i = 0; i < Simulation.REPETITIONS; i++) {
+                    runs.add(new Run(basePath, simName, type, i, logPath));
+                }
+            }
+        }
+
+        System.err.println("Running " + runs.size() + " simulations on " + workers + " workers");
+        long start = System.nanoTime();
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (Run run : runs) {
+            results.add(executor.submit(run::execute));
+        }
+        executor.shutdown();
+
+        int failed = 0;
+        for (int i = 0; i < runs.size(); i++) {
+            int exitCode;
+            try {
+                exitCode = results.get(i).get();
+            } catch (ExecutionException e) {
+                // the worker could not be forked, the other runs go on
+                failed++;
+                System.err.println("FAILED (" + e.getCause() + "): " + runs.get(i));
+                continue;
+            }
+            if (exitCode != 0) {
+                failed++;
+                System.err.println("FAILED (exit " + exitCode + "): " + runs.get(i) + ", see " + runs.get(i).getOutput());
+            }
+        }
+
+        long wallClock = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+        System.err.printf("Finished %d simulations (%d failed) in %d s wall-clock%n", runs.size(), failed, wallClock);
+
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs a single simulation in a new JVM with the same classpath and JVM arguments as this one, except for the
+     * agents.
+     *
+     * @return the exit code of the worker JVM
+     */
+    static int fork(Path basePath, String simName, String type, int count, File output) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // agents such as a debugger would bind the same port in every worker and stop them from starting
+            if (!argument.startsWith("-agentlib") && !argument.startsWith("-agentpath")
+                    && !argument.startsWith("-javaagent")) {
+                command.add(argument);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Simulation.class.getName());
+        command.add(basePath.toString());
+        command.add(simName);
+        command.add(type);
+        command.add(String.valueOf(count));
+
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(output)
+                .start();
+        return process.waitFor();
+    }
+
+    private static class Run {
+        private final Path basePath;
+        private final String simName;
+        private final String type;
+        private final int count;
+        private final File output;
+
+        Run(Path basePath, String simName, String type, int count, String logPath) {
+            this.basePath = basePath;
+            this.simName = simName;
+            this.type = type;
+            this.count = count;
+            this.output = new File(logPath + "-" + type + "-" + count + ".err");
+        }
+
+        int execute() throws Exception {
+            long start = System.nanoTime();
+            int exitCode = fork(basePath, simName, type, count, output);
+
+            System.err.printf("%s finished in %d s%n", this,
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+            return exitCode;
+        }
+
+        File getOutput() {
+            return output;
+        }
+
+        @Override
+        public String toString() {
+            return simName + "-" + type + "-" + count;
+        }
+    }
+}
@@ -1,40 +1,80 @@
 package ca.ncct.uottawa.selforg.ant.sim;
 
-import org.apache.commons.lang3.tuple.Pair;
 //import org.cloudbus.cloudsim.ex.util.CustomLog;
 
 import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
+/**
+ * Decides how many servers to add or remove by house hunting: every ant proposes a nest, a server count, and in
+ * recruitment phases the ants move to fitter nests until they all agree. Several independent hunts can be run in
+ * parallel, in lock step so that a seeded run decides the same way every time. The hunts decide as soon as a quorum
+ * of them settled on server counts within one server of each other, without waiting for the slowest hunts. If they
+ * do not agree, the decision is the median server count once all hunts settled, which varies less than a single
+ * hunt. A maximum number of phases bounds the time of a decision.
+ */
 public class HHAntOptimizer implements IAntOptimizer {
 
-    private Set<Ant> ants = new HashSet<>();
-    private LinkedHashMap<Ant, Nest> antToNest = new LinkedHashMap<>();
-    private Random random = new Random();
+    private Set<Ant> ants = new LinkedHashSet<>();
+    private SplittableRandom random = new SplittableRandom();
     private Double maxPher = null;
     private Double optPher = null;
+    private final int hunts;
+    private final int quorum;
+    private final int maxPhases;
+    private int recruitmentPhases = 0;
+
+    // server counts of settled hunts which differ by at most this much agree
+    private static final int AGREEMENT = 1;
 
     /*private Function<Integer, Integer> addFunction = x -> x + Math.max(1, random.nextInt(x));
     private Function<Integer, Integer> removeFunction = x -> x - Math.min(x - 1, Math.max(1, random.nextInt(x)));*/
-    private Function<Pair<Integer, Double>, Integer> addFunction = x ->
-            x.getLeft() + (int) Math.round(
-                    x.getLeft() / 2d * random.nextDouble() +
-                    (x.getLeft() / 2d * Math.abs(x.getRight() - maxPher) / maxPher));
-    private Function<Pair<Integer, Double>, Integer> removeFunction = x ->
-            x.getLeft() -  (int) Math.round(
-                    x.getLeft() / 2d * random.nextDouble() +
-                            (x.getLeft() / 2d * Math.abs(x.getRight() - maxPher) / maxPher));
+    private NestGenerator addFunction = (antCount, pheromone, random) ->
+            antCount + (int) Math.round(
+                    antCount / 2d * random.nextDouble() +
+                    (antCount / 2d * Math.abs(pheromone - maxPher) / maxPher));
+    private NestGenerator removeFunction = (antCount, pheromone, random) ->
+            antCount -  (int) Math.round(
+                    antCount / 2d * random.nextDouble() +
+                            (antCount / 2d * Math.abs(pheromone - maxPher) / maxPher));
+
+    /**
+     * A single hunt run until all ants agree.
+     */
+    public HHAntOptimizer() {
+        this(1, 1, 0);
+    }
+
+    public HHAntOptimizer(AntSystemConfig config) {
+        this(config.getHouseHunts(), config.getHouseHuntQuorum(), config.getMaxRecruitmentPhases());
+    }
+
+    /**
+     * @param hunts     number of independent hunts
+     * @param quorum    number of settled hunts which have to agree on the server count, within one server
+     * @param maxPhases maximum number of recruitment phases, 0 for no maximum
+     */
+    public HHAntOptimizer(int hunts, int quorum, int maxPhases) {
+        if (hunts < 1 || quorum < 1 || quorum > hunts || maxPhases < 0) {
+            throw new IllegalArgumentException("Invalid house hunting settings: hunts " + hunts + ", quorum " + quorum
+                    + ", max phases " + maxPhases);
+        }
+        this.hunts = hunts;
+        this.quorum = quorum;
+        this.maxPhases = maxPhases;
+    }
 
     public void setPheromones(Double maxPher, Double minPher) {
         this.maxPher = maxPher;
         this.optPher = (maxPher + minPher) / 2;
     }
 
+    public void setRandom(SplittableRandom random) {
+        this.random = random;
+    }
+
     public void setAnts(Set<Ant> ants) {
         this.ants.clear();
         this.ants.addAll(ants);
-        antToNest.clear();
     }
 
     @Override
@@ -47,99 +87,217 @@ public class HHAntOptimizer implements IAntOptimizer {
         return houseHunt(removeFunction);
     }
 
-    private int houseHunt(Function<Pair<Integer, Double>, Integer> generatorFunction) {
+    private int houseHunt(NestGenerator generatorFunction) {
         int originalSize = ants.size();
 
         if (ants.size() % 2 == 1) {
-            // odd number of ants, we create an extra fake ant
-            ants.add(new Ant(ants.iterator().next()));
+            // odd number of ants, we create an extra fake ant, on a stream of the optimizer so that the real ants'
+            // streams are not touched
+            ants.add(new Ant(ants.iterator().next(), random.split()));
         }
-        initSolutions(generatorFunction);
 
-        for (Ant ant : antToNest.keySet()) {
-            Nest nest = antToNest.get(ant);
-            nest.getFitness().put(ant, ant.evaluateFitness(nest, originalSize, maxPher, optPher));
+        // a single hunt uses the random of the optimizer itself, several hunts each get their own stream
+        Hunt[] colonies = new Hunt[hunts];
+        for (int i = 0; i < hunts; i++) {
+            colonies[i] = new Hunt(originalSize, generatorFunction, hunts == 1 ? random : random.split());
         }
 
-        //CustomLog.printf("Ant-HouseHunting init: %s", antToNest);
-
-        while (!endCondition()) {
-            recruitmentPhase(originalSize);
+        recruitmentPhases = 0;
+        Integer decision = decide(colonies, false);
+        while (decision == null) {
+            if (hunts == 1) {
+                colonies[0].recruitmentPhase();
+            } else {
+                Arrays.stream(colonies).parallel().filter(hunt -> !hunt.isSettled()).forEach(Hunt::recruitmentPhase);
+            }
+            recruitmentPhases++;
+            decision = decide(colonies, maxPhases > 0 && recruitmentPhases >= maxPhases);
         }
 
-        return Math.abs(antToNest.values().iterator().next().getServerCount() - originalSize);
+        return Math.abs(decision - originalSize);
     }
 
-    private boolean endCondition() {
-        // end condition is only one nest exists
-        return antToNest.values().stream().distinct().collect(Collectors.toList()).size() == 1;
+    /**
+     * @return once a quorum of the settled hunts agree, the median of their server counts. Once all hunts settled
+     * without agreeing, or when forced, the median of the server counts all hunts lean towards. Otherwise null.
+     */
+    private Integer decide(Hunt[] colonies, boolean force) {
+        List<Integer> serverCounts = new ArrayList<>();
+        for (Hunt hunt : colonies) {
+            if (hunt.isSettled()) {
+                serverCounts.add(hunt.getServerCount());
+            }
+        }
+        Collections.sort(serverCounts);
+        // the lowest quorum of sorted server counts which agree
+        for (int i = 0; i + quorum <= serverCounts.size(); i++) {
+            if (serverCounts.get(i + quorum - 1) - serverCounts.get(i) <= AGREEMENT) {
+                return serverCounts.get(i + (quorum - 1) / 2);
+            }
+        }
+        if (serverCounts.size() < colonies.length && !force) {
+            return null;
+        }
+        serverCounts.clear();
+        for (Hunt hunt : colonies) {
+            serverCounts.add(hunt.getServerCount());
+        }
+        Collections.sort(serverCounts);
+        return serverCounts.get((serverCounts.size() - 1) / 2);
     }
 
-    private void recruitmentPhase(int originalSize) {
-        List<Pair<Ant, Ant>> recruitmentAnts = new ArrayList<>();
-        Map<Ant, Nest> recruiterNests = new HashMap<>();
-
-        antToNest = sortByValue(antToNest);
-        //CustomLog.printf("Ant-HouseHunting sorted nests: %s", antToNest);
-
-        while (!antToNest.isEmpty()) {
-            double rand = random.nextDouble();
-            rand = Math.pow(rand, 0.5);
-            int recruitIndex = (int) Math.max(Math.floor(rand * (antToNest.size() + 1)), 1);
+    /**
+     * @return the number of recruitment phases the last house hunt took to decide
+     */
+    int getRecruitmentPhases() {
+        return recruitmentPhases;
+    }
 
-            int recruitedIndex = -1;
+    private interface NestGenerator {
+        int apply(int antCount, double pheromone, SplittableRandom random);
+    }
 
-            while (recruitedIndex == -1 || recruitedIndex == recruitIndex) {
-                rand = random.nextDouble();
-                rand = Math.pow(rand, 2.0);
-                recruitedIndex = (int) Math.max(Math.floor(rand * (antToNest.size() + 1)), 1);
+    /**
+     * One colony hunting with its own random stream. The ants are shared between hunts, they are only read.
+     */
+    private final class Hunt {
+        private final int originalSize;
+        private final SplittableRandom random;
+        private LinkedHashMap<Ant, Nest> antToNest = new LinkedHashMap<>();
+        // during a hunt the fitness of an ant only depends on its memory and on the server count of the nest
+        private final Map<Integer, Map<Ant, Double>> fitnessByServerCount = new HashMap<>();
+        private boolean settled;
+
+        Hunt(int originalSize, NestGenerator generatorFunction, SplittableRandom random) {
+            this.originalSize = originalSize;
+            this.random = random;
+            initSolutions(generatorFunction);
+
+            for (Map.Entry<Ant, Nest> antNest : antToNest.entrySet()) {
+                evaluateFitness(antNest.getKey(), antNest.getValue());
             }
+            settled = endCondition();
 
-            Ant recruiter = null;
-            Ant recruited = null;
+            //CustomLog.printf("Ant-HouseHunting init: %s", antToNest);
+        }
+
+        boolean isSettled() {
+            return settled;
+        }
 
-            int idx = 1;
-            for (Ant ant: antToNest.keySet()) {
-                if (idx == recruitIndex) {
-                    recruiter = ant;
+        /**
+         * @return the server count of the nest the ants agreed on, or of the nest with the most ants if they did not
+         * agree yet
+         */
+        int getServerCount() {
+            if (settled) {
+                return antToNest.values().iterator().next().getServerCount();
+            }
+            Map<Nest, Integer> antsInNest = new LinkedHashMap<>();
+            Nest largest = null;
+            for (Nest nest : antToNest.values()) {
+                int count = antsInNest.merge(nest, 1, Integer::sum);
+                if (largest == null || count > antsInNest.get(largest)) {
+                    largest = nest;
                 }
-                if (idx == recruitedIndex) {
-                    recruited = ant;
+            }
+            return largest.getServerCount();
+        }
+
+        private boolean endCondition() {
+            // end condition is only one nest exists
+            Nest first = null;
+            for (Nest nest : antToNest.values()) {
+                if (first == null) {
+                    first = nest;
+                } else if (nest != first) {
+                    return false;
                 }
-                if (recruiter != null && recruited != null) {
-                    break;
+            }
+            return first != null;
+        }
+
+        /**
+         * Pairs up all ants, the recruiter drawn towards the fittest nests and the recruited towards the least fit, and
+         * moves both to the nest of the recruiter. The nests are ranked once per phase and the ranks of the ants not
+         * paired yet are looked up in a {@link Ranking}, so a phase takes O(n log n).
+         */
+        void recruitmentPhase() {
+            // stable sort, ants with equally fit nests keep the order of the previous phase
+            List<Map.Entry<Ant, Nest>> ranked = new ArrayList<>(antToNest.entrySet());
+            ranked.sort(Map.Entry.comparingByValue(Collections.reverseOrder()));
+            //CustomLog.printf("Ant-HouseHunting sorted nests: %s", ranked);
+
+            Ranking remaining = new Ranking(ranked.size());
+            LinkedHashMap<Ant, Nest> recruitedNests = new LinkedHashMap<>();
+
+            while (remaining.size() > 0) {
+                double rand = random.nextDouble();
+                rand = Math.pow(rand, 0.5);
+                int recruitIndex = (int) Math.max(Math.floor(rand * (remaining.size() + 1)), 1);
+
+                int recruitedIndex = -1;
+
+                while (recruitedIndex == -1 || recruitedIndex == recruitIndex) {
+                    rand = random.nextDouble();
+                    rand = Math.pow(rand, 2.0);
+                    recruitedIndex = (int) Math.max(Math.floor(rand * (remaining.size() + 1)), 1);
                 }
-                idx++;
+
+                int recruiterSlot = remaining.select(recruitIndex);
+                int recruitedSlot = remaining.select(recruitedIndex);
+                remaining.remove(recruiterSlot);
+                remaining.remove(recruitedSlot);
+
+                // recruiter and recruited go to recruiter nest
+                Nest nest = ranked.get(recruiterSlot).getValue();
+                recruitedNests.put(ranked.get(recruiterSlot).getKey(), nest);
+                recruitedNests.put(ranked.get(recruitedSlot).getKey(), nest);
             }
 
-            recruitmentAnts.add(Pair.of(recruiter, recruited));
-            recruiterNests.put(recruiter, antToNest.get(recruiter));
-            antToNest.remove(recruiter);
-            antToNest.remove(recruited);
+            //CustomLog.printf("Ant-HouseHunting recruitment: %s", recruitedNests);
+            antToNest = recruitedNests;
+            for (Map.Entry<Ant, Nest> antNest : antToNest.entrySet()) {
+                evaluateFitness(antNest.getKey(), antNest.getValue());
+            }
+            settled = endCondition();
         }
 
-        //CustomLog.printf("Ant-HouseHunting recruitment: %s", recruitmentAnts);
-        // update nests, recruiter and recruited go to recruiter nest
-        for (Pair<Ant, Ant> recruitment : recruitmentAnts) {
-            Nest nest = recruiterNests.get(recruitment.getLeft());
-            antToNest.put(recruitment.getLeft(), nest);
-            antToNest.put(recruitment.getRight(), nest);
-            nest.getFitness().put(recruitment.getLeft(), recruitment.getLeft().evaluateFitness(nest, originalSize, maxPher, optPher));
-            nest.getFitness().put(recruitment.getRight(), recruitment.getRight().evaluateFitness(nest, originalSize, maxPher, optPher));
+        /**
+         * Adds the fitness of the ant to the nest. An ant already evaluated for the nest, or for another nest with the
+         * same server count, is not evaluated again.
+         */
+        private void evaluateFitness(Ant ant, Nest nest) {
+            if (nest.hasFitness(ant)) {
+                return;
+            }
+            Map<Ant, Double> fitnessOfAnts = fitnessByServerCount.get(nest.getServerCount());
+            if (fitnessOfAnts == null) {
+                fitnessOfAnts = new HashMap<>();
+                fitnessByServerCount.put(nest.getServerCount(), fitnessOfAnts);
+            }
+            Double fitness = fitnessOfAnts.get(ant);
+            if (fitness == null) {
+                fitness = ant.evaluateFitness(nest, originalSize, maxPher, optPher);
+                fitnessOfAnts.put(ant, fitness);
+            }
+            nest.putFitness(ant, fitness);
         }
-    }
 
-    private void initSolutions(Function<Pair<Integer, Double>, Integer> generatorFunction) {
-        for (Ant ant : ants) {
-            antToNest.put(ant, new Nest());
-            antToNest.get(ant).setServerCount(Math.max(1,
-                    generatorFunction.apply(Pair.of(ants.size(), ant.getAveragePheromone()))));
+        private void initSolutions(NestGenerator generatorFunction) {
+            for (Ant ant : ants) {
+                antToNest.put(ant, new Nest());
+                antToNest.get(ant).setServerCount(Math.max(1,
+                        generatorFunction.apply(ants.size(), ant.getAveragePheromone(), random)));
+            }
         }
     }
 
     static class Nest implements  Comparable<Nest> {
         private int serverCount;
-        private Map<Ant, Double> fitness = new HashMap<>();
+        private Map<Ant, Double> fitness = new LinkedHashMap<>();
+        // running sum of the fitness values, an ant is only put once per nest, so that comparing nests is O(1)
+        private double fitnessSum = 0;
 
         int getServerCount() {
             return serverCount;
@@ -149,12 +307,17 @@ public class HHAntOptimizer implements IAntOptimizer {
             this.serverCount = serverCount;
         }
 
-        Map<Ant, Double> getFitness() {
-            return fitness;
+        boolean hasFitness(Ant ant) {
+            return fitness.containsKey(ant);
+        }
+
+        void putFitness(Ant ant, double value) {
+            fitness.put(ant, value);
+            fitnessSum += value;
         }
 
         double getAverageFitness() {
-            return fitness.values().stream().mapToDouble(x -> x).sum();
+            return fitnessSum;
         }
 
         @Override
@@ -171,15 +334,50 @@ public class HHAntOptimizer implements IAntOptimizer {
         }
     }
 
-    public static <K, V extends Comparable<? super V>> LinkedHashMap<K, V> sortByValue(LinkedHashMap<K, V> map) {
-        return map.entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByValue(Collections.reverseOrder()))
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1,
-                        LinkedHashMap::new
-                ));
+    /**
+     * Fenwick tree over the ranked slots counting the slots still in the ranking, so that the slot of the k-th
+     * remaining ant is found and removed in O(log n).
+     */
+    private static final class Ranking {
+        private final int[] tree;
+        private int size;
+
+        Ranking(int slots) {
+            tree = new int[slots + 1];
+            for (int i = 1; i <= slots; i++) {
+                tree[i]++;
+                int parent = i + (i & -i);
+                if (parent <= slots) {
+                    tree[parent] += tree[i];
+                }
+            }
+            size = slots;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @param rank 1 based rank among the remaining slots
+         * @return the 0 based slot
+         */
+        int select(int rank) {
+            int slot = 0;
+            for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+                if (slot + step < tree.length && tree[slot + step] < rank) {
+                    slot += step;
+                    rank -= tree[slot];
+                }
+            }
+            return slot;
+        }
+
+        void remove(int slot) {
+            for (int i = slot + 1; i < tree.length; i += i & -i) {
+                tree[i]--;
+            }
+            size--;
+        }
     }
 }
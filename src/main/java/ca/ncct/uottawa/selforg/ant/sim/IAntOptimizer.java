@@ -1,6 +1,7 @@
 package ca.ncct.uottawa.selforg.ant.sim;
 
 import java.util.Set;
+import java.util.SplittableRandom;
 
 /**
  * Created by Bogdan on 2/5/2017.
@@ -10,4 +11,5 @@ public interface IAntOptimizer {
     int getRemoveServers();
     void setAnts(Set<Ant> ants);
     void setPheromones(Double maxPher, Double minPher);
+    void setRandom(SplittableRandom random);
 }
@@ -0,0 +1,173 @@
+package ca.ncct.uottawa.selforg.ant.sim;
+
+import ca.ncct.uottawa.selforg.ant.sim.telemetry.TelemetryWriter;
+import org.cloudbus.cloudsim.ex.disk.HddVm;
+import org.cloudbus.cloudsim.ex.vm.VMStatus;
+import org.cloudbus.cloudsim.ex.web.workload.brokers.WebBroker;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * State of the app servers seen by an autoscaling policy in one tick, read from the broker once per server and kept
+ * in reusable arrays so that capturing it every tick is cheap. The policies decide from the snapshot instead of
+ * querying the servers again. It is only rendered to the debug text of the policy logs when a log line is printed.
+ */
+class MonitoringSnapshot {
+    static final String NO_LABEL = "";
+
+    private HddVm[] vms = new HddVm[16];
+    private VMStatus[] statuses = new VMStatus[16];
+    private String[] labels = new String[16];
+    private int[] sessions = new int[16];
+    private double[] cpu = new double[16];
+    private double[] ram = new double[16];
+    private int[] cloudlets = new int[16];
+    private int size = 0;
+
+    /**
+     * @return whether a server with the status is initialising or running
+     */
+    static boolean isActive(VMStatus status) {
+        return status == VMStatus.INITIALISING || status == VMStatus.RUNNING;
+    }
+
+    /**
+     * Replaces the snapshot with the state of the servers, in the order of the list.
+     *
+     * @param activeOnly only capture the initialising and running servers
+     */
+    void capture(WebBroker broker, List<HddVm> servers, boolean activeOnly) {
+        clear();
+        for (HddVm vm : servers) {
+            VMStatus status = vm.getStatus();
+            if (activeOnly && !isActive(status)) {
+                continue;
+            }
+            add(vm, status, broker.getSessionsInServer(vm.getId()).size(), vm.getCPUUtil(), vm.getRAMUtil(),
+                    vm.getCloudletScheduler().getCloudletExecList().size());
+        }
+    }
+
+    void clear() {
+        Arrays.fill(vms, 0, size, null);
+        size = 0;
+    }
+
+    void add(HddVm vm, VMStatus status, int sessionCount, double cpuUtil, double ramUtil, int cloudletCount) {
+        if (size == vms.length) {
+            int length = size * 2;
+            vms = Arrays.copyOf(vms, length);
+            statuses = Arrays.copyOf(statuses, length);
+            labels = Arrays.copyOf(labels, length);
+            sessions = Arrays.copyOf(sessions, length);
+            cpu = Arrays.copyOf(cpu, length);
+            ram = Arrays.copyOf(ram, length);
+            cloudlets = Arrays.copyOf(cloudlets, length);
+        }
+        vms[size] = vm;
+        statuses[size] = status;
+        labels[size] = NO_LABEL;
+        sessions[size] = sessionCount;
+        cpu[size] = cpuUtil;
+        ram[size] = ramUtil;
+        cloudlets[size] = cloudletCount;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    HddVm getServer(int i) {
+        return vms[i];
+    }
+
+    boolean isActive(int i) {
+        return isActive(statuses[i]);
+    }
+
+    /**
+     * @return whether any of the servers is still booting
+     */
+    boolean hasInitialising() {
+        for (int i = 0; i < size; i++) {
+            if (statuses[i] == VMStatus.INITIALISING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    double getCpu(int i) {
+        return cpu[i];
+    }
+
+    double getRam(int i) {
+        return ram[i];
+    }
+
+    /**
+     * @param label extra tag rendered before the server status, e.g. "FREE, " or "OVERLOADED, "
+     */
+    void setLabel(int i, String label) {
+        labels[i] = label;
+    }
+
+    /**
+     * @return the average cpu utilisation of the servers, NaN if there are none
+     */
+    double getAverageCpu() {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += cpu[i];
+        }
+        return sum / size;
+    }
+
+    int getSessionCount() {
+        int sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += sessions[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Appends vm[STATUS] sessions(n) cpu(x) ram(y) cdlts(z); for every server.
+     */
+    StringBuilder render(StringBuilder sb) {
+        for (int i = 0; i < size; i++) {
+            renderServer(sb, i);
+        }
+        return sb;
+    }
+
+    /**
+     * Appends the labelled vm[LABEL, STATUS] cpu(x) ram(y) cdlts(z); entry followed by the entry of
+     * {@link #render(StringBuilder)} for every server.
+     */
+    StringBuilder renderLabelled(StringBuilder sb) {
+        for (int i = 0; i < size; i++) {
+            sb.append(vms[i]).append('[').append(labels[i]);
+            sb.append(String.format("%s] ", statuses[i]));
+            sb.append(String.format("cpu(%.2f) ram(%.2f) cdlts(%d);\t", cpu[i], ram[i], cloudlets[i]));
+            renderServer(sb, i);
+        }
+        return sb;
+    }
+
+    void writeTo(TelemetryWriter writer, double time) {
+        writer.beginServers(time, size);
+        for (int i = 0; i < size; i++) {
+            writer.server(vms[i].getId(), statuses[i].ordinal(), sessions[i], cpu[i], ram[i], cloudlets[i]);
+        }
+    }
+
+    private void renderServer(StringBuilder sb, int i) {
+        sb.append(vms[i]);
+        sb.append("[").append(statuses[i].name()).append("] ");
+        sb.append(String.format("sessions(%d) ", sessions[i]));
+        sb.append(String.format("cpu(%.2f) ram(%.2f) cdlts(%d);\t", cpu[i], ram[i], cloudlets[i]));
+    }
+}
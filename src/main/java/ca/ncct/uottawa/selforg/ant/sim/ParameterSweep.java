@@ -0,0 +1,418 @@
+package ca.ncct.uottawa.selforg.ant.sim;
+
+import ca.ncct.uottawa.selforg.ant.sim.logparser.StatsMerge;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Expands a sweep spec (see sweep.props) into run configurations over the cloud, workload and ant properties of
+ * the simulations and runs them in forked JVMs through {@link ExperimentRunner#fork}.
+ *
+ * Parameters are given as param.[cloud|workload|ant].name=value and can be either a list of values (1,2,4) or a
+ * range (min:max, or min:max:step for grid mode). Every (point, simulation, policy, repetition) run writes one row to
+ * results.csv in the output directory; runs already present there with exit code 0 are skipped, so an interrupted
+ * sweep can be restarted with the same spec.
+ *
+ * The runs write their metrics summaries (see {@link RunMetrics}), which are merged over the repetitions by
+ * {@link StatsMerge} into one row per (point, simulation, policy) of points.csv, with a column for every .metrics2
+ * and .metrics3 value and the average cpu and servers.
+ *
+ * Usage: ParameterSweep sweep.props
+ */
+public class ParameterSweep {
+
+    private static final String PARAM_PREFIX = "param.";
+    private static final List<String> SIM_FILES = Arrays.asList("cloud", "workload", "output", "ant");
+    private static final String RESULTS_HEADER = "PointId,Simulation,Policy,Repetition,ExitCode,Seconds,Parameters";
+    private static final String POINTS_HEADER = "PointId,Simulation,Policy,Runs";
+
+    public static void main(String[] args) throws Exception {
+        Path specPath = Paths.get(args[0]);
+        Properties spec = Simulation.loadProperties(specPath);
+
+        Path simulationPath = specPath.getParent().resolve(spec.getProperty("simulation", "simulation.props"));
+        Properties simulations = Simulation.loadProperties(simulationPath);
+        List<String> sims = spec.containsKey("sims") ? split(spec.getProperty("sims"))
+                : new ArrayList<>(simulations.stringPropertyNames());
+        List<String> types = spec.containsKey("policies") ? split(spec.getProperty("policies"))
+                : new ArrayList<>(Simulation.POLICIES.keySet());
+        int repetitions = Integer.parseInt(spec.getProperty("repetitions", String.valueOf(Simulation.REPETITIONS)));
+        int workers = Integer.parseInt(spec.getProperty("workers",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        Path outputDir = Paths.get(spec.getProperty("outputDir"));
+
+        List<Parameter> parameters = new ArrayList<>();
+        for (String key : new TreeSet<>(spec.stringPropertyNames())) {
+            if (key.startsWith(PARAM_PREFIX)) {
+                parameters.add(new Parameter(key.substring(PARAM_PREFIX.length()), spec.getProperty(key)));
+            }
+        }
+
+        Collection<Map<String, String>> points = expand(parameters, spec);
+
+        Files.createDirectories(outputDir);
+        Path resultsPath = outputDir.resolve("results.csv");
+        Set<String> completed = readCompleted(resultsPath);
+        if (!Files.exists(resultsPath)) {
+            Files.write(resultsPath, Collections.singletonList(RESULTS_HEADER), StandardCharsets.UTF_8);
+        }
+
+        List<Run> runs = new ArrayList<>();
+        Map<String, String> pointIds = new LinkedHashMap<>();
+        for (Map<String, String> point : points) {
+            String pointKey = toKey(point);
+            String pointId = UUID.nameUUIDFromBytes(pointKey.getBytes(StandardCharsets.UTF_8)).toString();
+            pointIds.put(pointId, pointKey);
+            Path pointDir = outputDir.resolve(pointId);
+            Path pointSimulation = writePoint(pointDir, simulationPath, simulations, sims, point);
+
+            for (String sim : sims) {
+                for (String type : types) {
+                    for (int i = 0; i < repetitions; i++) {
+                        Run run = new Run(pointId, pointKey, pointSimulation, sim, type, i);
+                        if (!completed.contains(run.getKey())) {
+                            runs.add(run);
+                        }
+                    }
+                }
+            }
+        }
+
+        System.err.printf("Sweep of %d points, %d runs left (%d already completed) on %d workers%n",
+                points.size(), runs.size(), completed.size(), workers);
+        long start = System.nanoTime();
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (Run run : runs) {
+            results.add(executor.submit(() -> run.execute(resultsPath)));
+        }
+        executor.shutdown();
+
+        int failed = 0;
+        for (int i = 0; i < runs.size(); i++) {
+            try {
+                if (results.get(i).get() != 0) {
+                    failed++;
+                }
+            } catch (ExecutionException e) {
+                failed++;
+                System.err.println("FAILED (" + e.getCause() + "): " + runs.get(i).getKey());
+            }
+        }
+
+        long wallClock = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+        System.err.printf("Finished %d runs (%d failed) in %d s wall-clock%n", runs.size(), failed, wallClock);
+
+        writePoints(outputDir, pointIds, sims, types, repetitions);
+
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static Collection<Map<String, String>> expand(List<Parameter> parameters, Properties spec) {
+        String mode = spec.getProperty("mode", "grid");
+        // keyed by point key so that sampled duplicates (e.g. of integer parameters) are only run once
+        Map<String, Map<String, String>> points = new LinkedHashMap<>();
+
+        if ("grid".equals(mode)) {
+            List<Map<String, String>> grid = new ArrayList<>();
+            grid.add(new TreeMap<>());
+            for (Parameter parameter : parameters) {
+                List<Map<String, String>> expanded = new ArrayList<>();
+                for (Map<String, String> point : grid) {
+                    for (String value : parameter.gridValues()) {
+                        Map<String, String> newPoint = new TreeMap<>(point);
+                        newPoint.put(parameter.name, value);
+                        expanded.add(newPoint);
+                    }
+                }
+                grid = expanded;
+            }
+            grid.forEach(point -> points.put(toKey(point), point));
+        } else if ("random".equals(mode) || "lhs".equals(mode)) {
+            int samples = Integer.parseInt(spec.getProperty("samples"));
+            Random random = spec.containsKey("seed") ? new Random(Long.parseLong(spec.getProperty("seed")))
+                    : new Random();
+
+            double[][] u = new double[parameters.size()][samples];
+            for (int p = 0; p < parameters.size(); p++) {
+                if ("lhs".equals(mode)) {
+                    // one sample in each of the equal size strata, strata shuffled per dimension
+                    List<Integer> strata = new ArrayList<>();
+                    for (int i = 0; i < samples; i++) {
+                        strata.add(i);
+                    }
+                    Collections.shuffle(strata, random);
+                    for (int i = 0; i < samples; i++) {
+                        u[p][i] = (strata.get(i) + random.nextDouble()) / samples;
+                    }
+                } else {
+                    for (int i = 0; i < samples; i++) {
+                        u[p][i] = random.nextDouble();
+                    }
+                }
+            }
+
+            for (int i = 0; i < samples; i++) {
+                Map<String, String> point = new TreeMap<>();
+                for (int p = 0; p < parameters.size(); p++) {
+                    point.put(parameters.get(p).name, parameters.get(p).valueAt(u[p][i]));
+                }
+                points.put(toKey(point), point);
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown sweep mode: " + mode + ", expected grid, random or lhs");
+        }
+
+        return points.values();
+    }
+
+    /**
+     * Writes the property files of every simulation with the point's parameters applied, together with a
+     * simulation.props referencing them, in the point directory.
+     */
+    private static Path writePoint(Path pointDir, Path simulationPath, Properties simulations, List<String> sims,
+                                   Map<String, String> point) throws IOException {
+        Files.createDirectories(pointDir);
+        Properties pointSimulations = new Properties();
+
+        for (String sim : sims) {
+            String simFiles = simulations.getProperty(sim);
+            if (simFiles == null) {
+                throw new IllegalArgumentException("Unknown simulation: " + sim);
+            }
+            String[] simulationFiles = simFiles.split(",");
+            List<String> pointFiles = new ArrayList<>();
+
+            for (int i = 0; i < SIM_FILES.size(); i++) {
+                String file = SIM_FILES.get(i);
+                Properties props = Simulation.loadProperties(
+                        simulationPath.getParent().resolve(simulationFiles[i].trim()));
+                for (Map.Entry<String, String> param : point.entrySet()) {
+                    if (param.getKey().startsWith(file + ".")) {
+                        props.setProperty(param.getKey().substring(file.length() + 1), param.getValue());
+                    }
+                }
+                if ("output".equals(file)) {
+                    props.setProperty("FilePath", pointDir.resolve(sim).toString());
+                    props.setProperty("Metrics", "true");
+                }
+
+                String pointFile = sim + "-" + file + ".props";
+                try (OutputStream os = Files.newOutputStream(pointDir.resolve(pointFile))) {
+                    props.store(os, toKey(point));
+                }
+                pointFiles.add(pointFile);
+            }
+            pointSimulations.setProperty(sim, String.join(",", pointFiles));
+        }
+
+        Path pointSimulation = pointDir.resolve("simulation.props");
+        try (OutputStream os = Files.newOutputStream(pointSimulation)) {
+            pointSimulations.store(os, toKey(point));
+        }
+        return pointSimulation;
+    }
+
+    /**
+     * Merges the metrics summaries of the repetitions of every (point, simulation, policy) in the point directory and
+     * rewrites points.csv with a row for each, including the runs of earlier invocations of the sweep.
+     */
+    private static void writePoints(Path outputDir, Map<String, String> pointIds, List<String> sims,
+                                    List<String> types, int repetitions) throws IOException {
+        List<String[]> keys = new ArrayList<>();
+        List<StatsMerge> merges = new ArrayList<>();
+        Set<String> metrics = new LinkedHashSet<>();
+        for (String pointId : pointIds.keySet()) {
+            Path pointDir = outputDir.resolve(pointId);
+            for (String sim : sims) {
+                for (String type : types) {
+                    StatsMerge merge = new StatsMerge();
+                    for (int i = 0; i < repetitions; i++) {
+                        String run = sim + "-" + type + "-" + i;
+                        if (Files.exists(pointDir.resolve(run + "." + StatsMerge.EXTENSION + "2"))) {
+                            merge.add(pointDir, run);
+                        }
+                    }
+                    if (merge.getRunCount() > 0) {
+                        merge.write(pointDir, sim + "-" + type);
+                        metrics.addAll(merge.getSummary().keySet());
+                    }
+                    keys.add(new String[]{pointId, sim, type});
+                    merges.add(merge);
+                }
+            }
+        }
+
+        List<String> lines = new ArrayList<>();
+        lines.add(POINTS_HEADER + ',' + String.join(",", metrics) + ",Parameters");
+        for (int i = 0; i < keys.size(); i++) {
+            StatsMerge merge = merges.get(i);
+            Map<String, Double> summary = merge.getRunCount() > 0 ? merge.getSummary() : Collections.emptyMap();
+            StringBuilder row = new StringBuilder(String.join(",", keys.get(i)))
+                    .append(',').append(merge.getRunCount());
+            for (String metric : metrics) {
+                Double value = summary.get(metric);
+                row.append(',').append(value == null ? "" : value.toString());
+            }
+            lines.add(row.append(',').append(pointIds.get(keys.get(i)[0])).toString());
+        }
+        Files.write(outputDir.resolve("points.csv"), lines, StandardCharsets.UTF_8);
+    }
+
+    private static Set<String> readCompleted(Path resultsPath) throws IOException {
+        Set<String> completed = new HashSet<>();
+        if (Files.exists(resultsPath)) {
+            for (String line : Files.readAllLines(resultsPath, StandardCharsets.UTF_8)) {
+                String[] vals = line.split(",");
+                if (vals.length >= 5 && "0".equals(vals[4])) {
+                    completed.add(String.join(",", vals[0], vals[1], vals[2], vals[3]));
+                }
+            }
+        }
+        return completed;
+    }
+
+    private static String toKey(Map<String, String> point) {
+        return point.entrySet().stream().map(e -> e.getKey() + '=' + e.getValue()).collect(Collectors.joining(";"));
+    }
+
+    private static List<String> split(String values) {
+        return Arrays.stream(values.split(",")).map(String::trim).collect(Collectors.toList());
+    }
+
+    private static class Parameter {
+        private final String name;
+        private final List<String> values;
+        private final double min;
+        private final double max;
+        private final double step;
+        private final boolean integer;
+
+        Parameter(String name, String spec) {
+            String file = name.substring(0, Math.max(0, name.indexOf('.')));
+            if (!SIM_FILES.contains(file) || "output".equals(file)) {
+                throw new IllegalArgumentException("Parameter " + name + " must start with cloud., workload. or ant.");
+            }
+            this.name = name;
+
+            if (spec.contains(":")) {
+                String[] range = spec.split(":");
+                values = null;
+                min = Double.parseDouble(range[0].trim());
+                max = Double.parseDouble(range[1].trim());
+                step = range.length > 2 ? Double.parseDouble(range[2].trim()) : 0;
+                integer = isInteger(range[0]) && isInteger(range[1]) && (range.length < 3 || isInteger(range[2]));
+            } else {
+                values = split(spec);
+                min = max = step = 0;
+                integer = false;
+            }
+        }
+
+        List<String> gridValues() {
+            if (values != null) {
+                return values;
+            }
+            if (step <= 0) {
+                throw new IllegalArgumentException("Grid mode needs a min:max:step range for " + name);
+            }
+            // in decimal so that the upper bound is not lost to rounding, e.g. for 0.1:0.3:0.1
+            BigDecimal start = BigDecimal.valueOf(min);
+            BigDecimal increment = BigDecimal.valueOf(step);
+            int count = BigDecimal.valueOf(max).subtract(start).divide(increment, 0, RoundingMode.FLOOR).intValue();
+            List<String> grid = new ArrayList<>();
+            for (int i = 0; i <= count; i++) {
+                grid.add(format(start.add(increment.multiply(BigDecimal.valueOf(i))).doubleValue()));
+            }
+            return grid;
+        }
+
+        /**
+         * @param u a uniform sample in [0, 1)
+         */
+        String valueAt(double u) {
+            if (values != null) {
+                return values.get((int) (u * values.size()));
+            } else if (integer) {
+                return format(min + Math.floor(u * (max - min + 1)));
+            } else {
+                return format(min + u * (max - min));
+            }
+        }
+
+        private String format(double value) {
+            return integer ? String.valueOf((long) value) : String.valueOf(value);
+        }
+
+        private static boolean isInteger(String value) {
+            try {
+                Long.parseLong(value.trim());
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+    }
+
+    private static class Run {
+        private final String pointId;
+        private final String pointKey;
+        private final Path simulationPath;
+        private final String simName;
+        private final String type;
+        private final int count;
+
+        Run(String pointId, String pointKey, Path simulationPath, String simName, String type, int count) {
+            this.pointId = pointId;
+            this.pointKey = pointKey;
+            this.simulationPath = simulationPath;
+            this.simName = simName;
+            this.type = type;
+            this.count = count;
+        }
+
+        int execute(Path resultsPath) throws Exception {
+            long start = System.nanoTime();
+            int exitCode;
+            try {
+                exitCode = ExperimentRunner.fork(simulationPath, simName, type, count,
+                        simulationPath.getParent().resolve(simName + "-" + type + "-" + count + ".err").toFile());
+            } catch (IOException e) {
+                // the worker could not be forked, recorded as failed so that a restart runs it again
+                System.err.printf("%s could not be started: %s%n", getKey(), e);
+                exitCode = -1;
+            }
+            long seconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+
+            String row = String.join(",", getKey(), String.valueOf(exitCode), String.valueOf(seconds), pointKey);
+            synchronized (ParameterSweep.class) {
+                Files.write(resultsPath, Collections.singletonList(row), StandardCharsets.UTF_8,
+                        StandardOpenOption.APPEND);
+            }
+            System.err.printf("%s finished in %d s (exit %d)%n", getKey(), seconds, exitCode);
+            return exitCode;
+        }
+
+        String getKey() {
+            return String.join(",", pointId, simName, type, String.valueOf(count));
+        }
+    }
+}
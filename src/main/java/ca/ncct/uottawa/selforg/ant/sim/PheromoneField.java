@@ -0,0 +1,176 @@
+package ca.ncct.uottawa.selforg.ant.sim;
+
+import org.cloudbus.cloudsim.ex.disk.HddVm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * Pheromone level per server in dense arrays indexed by a slot, assigned to a server when it is added and recycled
+ * when it is removed, so that the ant steps read and write levels without hashing the servers.
+ * <p>
+ * Decay is lazy. A decay only bumps a global decay count, every server level remembers the decay count it was last
+ * brought up to date at and catches up the missed decays when it is next read or written. Since levels are floored
+ * at 0 after every decay, catching up n decays at once is the same as applying them one by one.
+ */
+class PheromoneField {
+    static final int NO_SLOT = -1;
+
+    // only used to find the slot of a server when it is added, removed or looked up by the policy once per tick
+    private final Map<HddVm, Integer> slots = new HashMap<>();
+    private final double decayAmount;
+    private long decays = 0;
+
+    private HddVm[] servers = new HddVm[16];
+    private double[] values = new double[16];
+    private long[] levelDecays = new long[16];
+    // slots in the order the servers were added, so that a seeded run visits the servers in the same order every time
+    private int[] order = new int[16];
+    private int size = 0;
+    private int[] freeSlots = new int[16];
+    private int freeCount = 0;
+    private int slotCount = 0;
+
+    PheromoneField(double decayAmount) {
+        this.decayAmount = decayAmount;
+    }
+
+    /**
+     * @return the slot of the server, or {@link #NO_SLOT} if the server is not in the field
+     */
+    int slotOf(HddVm vm) {
+        Integer slot = slots.get(vm);
+        return slot == null ? NO_SLOT : slot;
+    }
+
+    /**
+     * Sets the level of a server, adding it to the field if it is not there yet.
+     *
+     * @return the slot of the server
+     */
+    int put(HddVm vm, double value) {
+        int slot = slotOf(vm);
+        if (slot == NO_SLOT) {
+            slot = freeCount > 0 ? freeSlots[--freeCount] : newSlot();
+            slots.put(vm, slot);
+            servers[slot] = vm;
+            if (size == order.length) {
+                order = Arrays.copyOf(order, size * 2);
+            }
+            order[size++] = slot;
+        }
+        put(slot, value);
+        return slot;
+    }
+
+    /**
+     * @return the up to date level of the server in the slot
+     */
+    double get(int slot) {
+        catchUp(slot);
+        return values[slot];
+    }
+
+    void put(int slot, double value) {
+        values[slot] = value;
+        levelDecays[slot] = decays;
+    }
+
+    HddVm getServer(int slot) {
+        return servers[slot];
+    }
+
+    /**
+     * Decays every level by the decay amount, in O(1).
+     */
+    void decay() {
+        decays++;
+    }
+
+    boolean contains(HddVm vm) {
+        return slots.containsKey(vm);
+    }
+
+    void remove(HddVm vm) {
+        Integer slot = slots.remove(vm);
+        if (slot == null) {
+            return;
+        }
+        servers[slot] = null;
+        for (int i = 0; i < size; i++) {
+            if (order[i] == slot) {
+                System.arraycopy(order, i + 1, order, i, size - i - 1);
+                size--;
+                break;
+            }
+        }
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    void clear() {
+        slots.clear();
+        Arrays.fill(servers, 0, slotCount, null);
+        size = 0;
+        freeCount = 0;
+        slotCount = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return one more than the highest slot in use, the length of an array indexed by slot
+     */
+    int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * @return the servers in the order they were added
+     */
+    List<HddVm> getServers() {
+        List<HddVm> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(servers[order[i]]);
+        }
+        return list;
+    }
+
+    /**
+     * Visits the up to date level of every server, in the order they were added, without storing the decays caught
+     * up on.
+     */
+    void forEach(ObjDoubleConsumer<HddVm> consumer) {
+        for (int i = 0; i < size; i++) {
+            consumer.accept(servers[order[i]], peek(order[i]));
+        }
+    }
+
+    private int newSlot() {
+        if (slotCount == servers.length) {
+            int length = slotCount * 2;
+            servers = Arrays.copyOf(servers, length);
+            values = Arrays.copyOf(values, length);
+            levelDecays = Arrays.copyOf(levelDecays, length);
+        }
+        return slotCount++;
+    }
+
+    private double peek(int slot) {
+        long missed = decays - levelDecays[slot];
+        return missed == 0 ? values[slot] : Math.max(0, values[slot] - missed * decayAmount);
+    }
+
+    private void catchUp(int slot) {
+        values[slot] = peek(slot);
+        levelDecays[slot] = decays;
+    }
+}
@@ -0,0 +1,100 @@
+package ca.ncct.uottawa.selforg.ant.sim;
+
+import ca.ncct.uottawa.selforg.ant.sim.logparser.DelayStats;
+import ca.ncct.uottawa.selforg.ant.sim.logparser.StatsAccumulator;
+import ca.ncct.uottawa.selforg.ant.sim.logparser.StatsMerge;
+import org.cloudbus.cloudsim.ex.web.WebSession;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The summaries of a simulation run, aggregated online from the policy ticks which print the autoscale lines that
+ * LogParser turns into .out rows, so that the log does not have to be parsed afterwards. Configured once per run like
+ * CustomLog.
+ * <p>
+ * Every tick adds the sample LogParser reads from the autoscale line of the tick, also when telemetry replaces the
+ * line: the time and the cpu of every server as printed with two decimals, and the servers counted once per cpu(x)
+ * entry of the line, which the labelled line of the compressed policy has twice per server. The .metrics, .metrics2
+ * and .metrics3 files of a run therefore hold what StatsGen writes to .stats and .stats2 and LogParser to .stats3 for
+ * the log of that run alone. They are named after the run log, FilePath-type-repetition.metrics*, and
+ * {@link StatsMerge} merges the repetitions of a test, see there for how that differs from StatsGen.
+ */
+final class RunMetrics {
+    private static StatsAccumulator stats = null;
+    private static Path dir;
+    private static String basename;
+    private static int hour;
+
+    private RunMetrics() {
+    }
+
+    /**
+     * @param dir      directory the summaries are written to
+     * @param basename file name of the summaries without the extension
+     */
+    static void configure(Path dir, String basename) {
+        RunMetrics.stats = new StatsAccumulator();
+        RunMetrics.dir = dir;
+        RunMetrics.basename = basename;
+        RunMetrics.hour = -1;
+    }
+
+    static boolean isEnabled() {
+        return stats != null;
+    }
+
+    /**
+     * @param entriesPerServer the number of cpu(x) entries per server in the autoscale line of the policy
+     */
+    static void record(double time, MonitoringSnapshot snapshot, int entriesPerServer) {
+        double logTime = printed(time);
+        // every hour gets a line, the same as StatsGen does for a single .out file
+        for (int sampleHour = (int) (logTime / StatsAccumulator.ONE_HOUR); hour < sampleHour; hour++) {
+            if (hour >= 0) {
+                stats.endHour();
+            }
+            stats.beginHour();
+        }
+
+        // summed in the order of the line, NaN is printed as such and skipped by LogParser
+        double cpuSum = 0;
+        int entries = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            double cpu = snapshot.getCpu(i);
+            if (Double.isNaN(cpu) || Double.isInfinite(cpu)) {
+                continue;
+            }
+            for (int entry = 0; entry < entriesPerServer; entry++) {
+                cpuSum += printed(cpu);
+                entries++;
+            }
+        }
+        stats.addResult(entries, cpuSum / entries, snapshot.getSessionCount(), logTime);
+    }
+
+    // the value as the log prints it with %.2f
+    private static double printed(double value) {
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    static void close(List<WebSession> servedSessions) throws IOException {
+        if (stats == null) {
+            return;
+        }
+        if (hour >= 0) {
+            stats.endHour();
+        }
+        stats.write(dir, basename, StatsMerge.EXTENSION);
+
+        DelayStats delayStats = new DelayStats();
+        for (WebSession session : servedSessions) {
+            delayStats.add(session.getDelay());
+        }
+        delayStats.write(dir.resolve(basename + "." + StatsMerge.EXTENSION + "3"));
+        stats = null;
+    }
+}
@@ -1,6 +1,7 @@
 package ca.ncct.uottawa.selforg.ant.sim;
 
 import java.util.Set;
+import java.util.SplittableRandom;
 
 /**
  * Created by Bogdan on 2/5/2017.
@@ -25,4 +26,9 @@ public class SimpleAntOptimizer implements IAntOptimizer {
     public void setPheromones(Double maxPher, Double minPher) {
 
     }
+
+    @Override
+    public void setRandom(SplittableRandom random) {
+        // NO-OP
+    }
 }
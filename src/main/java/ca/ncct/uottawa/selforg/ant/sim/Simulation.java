@@ -1,5 +1,6 @@
 package ca.ncct.uottawa.selforg.ant.sim;
 
+import ca.ncct.uottawa.selforg.ant.sim.telemetry.Telemetry;
 import org.apache.commons.lang3.tuple.Pair;
 import org.cloudbus.cloudsim.*;
 import org.cloudbus.cloudsim.core.CloudSim;
@@ -26,6 +27,7 @@ import static org.cloudbus.cloudsim.Consts.HOUR;
 import static org.cloudbus.cloudsim.Consts.DAY;
 import static org.cloudbus.cloudsim.ex.web.experiments.ExperimentsUtil.HOURS;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -41,32 +43,67 @@ public class Simulation {
     private static Function<Pair<Long, Properties>, IAutoscalingPolicy> supplierSimple = uid -> new SimpleAutoScalingPolicy(uid.getLeft(), 0.8, 0.1, 150);
     private static Function<Pair<Long, Properties>, IAutoscalingPolicy> supplierCompressed = uid -> new CompressedAutoscalingPolicy(uid.getLeft(), 0.7, 0.7, 5, 150);
     private static Function<Pair<Long, Properties>, IAutoscalingPolicy> supplierSimpleAnt = uid -> new AntAutoScalingPolicy(uid.getRight(), uid.getLeft(), new SimpleAntOptimizer());
-    private static Function<Pair<Long, Properties>, IAutoscalingPolicy> supplierHHAnt = uid -> new AntAutoScalingPolicy(uid.getRight(), uid.getLeft(), new HHAntOptimizer());
+    private static Function<Pair<Long, Properties>, IAutoscalingPolicy> supplierHHAnt = uid -> new AntAutoScalingPolicy(uid.getRight(), uid.getLeft(), new HHAntOptimizer(new AntSystemConfig(uid.getRight())));
+
+    static final Map<String, Function<Pair<Long, Properties>, IAutoscalingPolicy>> POLICIES = new LinkedHashMap<>();
+    static final int REPETITIONS = 5;
+
+    static {
+        POLICIES.put("base", supplierSimple);
+        POLICIES.put("antSimple", supplierSimpleAnt);
+        POLICIES.put("antHH", supplierHHAnt);
+        POLICIES.put("compressed", supplierCompressed);
+    }
 
     public static void main(String[] args) throws Exception {
-        Properties props = new Properties();
         Path basePath = Paths.get(args[0]);
-        try (InputStream is = Files.newInputStream(basePath)) {
-            props.load(is);
+        Properties props = loadProperties(basePath);
+
+        if (args.length == 4) {
+            // single run <simulation.props> <simName> <type> <count>, used by ExperimentRunner workers
+            runSimulation(basePath, args[1], props.getProperty(args[1]), args[2], Integer.parseInt(args[3]));
+            return;
         }
 
         for (Map.Entry<Object, Object> entry : props.entrySet()) {
             String simName = (String) entry.getKey();
-            String[] simulationFiles = ((String) entry.getValue()).split(",");
-            String cloudProperties = basePath.getParent().toString() + "/" + simulationFiles[0].trim();
-            String workloadProperties = basePath.getParent().toString() + "/" + simulationFiles[1].trim();
-            String outputProperties = basePath.getParent().toString() + "/" + simulationFiles[2].trim();
-            String antProperties = basePath.getParent().toString() + "/" + simulationFiles[3].trim();
-
-            for (int i = 0; i < 5; i++) {
-                /*runSimulation(simName, cloudProperties, workloadProperties, outputProperties, antProperties, supplierSimple, "base", i);
-                runSimulation(simName, cloudProperties, workloadProperties, outputProperties, antProperties, supplierSimpleAnt, "antSimple", i);
-                runSimulation(simName, cloudProperties, workloadProperties, outputProperties, antProperties, supplierHHAnt, "antHH", i);*/
-                runSimulation(simName, cloudProperties, workloadProperties, outputProperties, antProperties, supplierCompressed, "compressed", i);
+
+            for (int i = 0; i < REPETITIONS; i++) {
+                /*runSimulation(basePath, simName, (String) entry.getValue(), "base", i);
+                runSimulation(basePath, simName, (String) entry.getValue(), "antSimple", i);
+                runSimulation(basePath, simName, (String) entry.getValue(), "antHH", i);*/
+                runSimulation(basePath, simName, (String) entry.getValue(), "compressed", i);
             }
         }
     }
 
+    static Properties loadProperties(Path path) throws IOException {
+        Properties props = new Properties();
+        try (InputStream is = Files.newInputStream(path)) {
+            props.load(is);
+        }
+        return props;
+    }
+
+    private static void runSimulation(Path basePath, String simName, String simFiles, String type, int count)
+            throws Exception {
+        if (simFiles == null) {
+            throw new IllegalArgumentException("Unknown simulation: " + simName);
+        }
+        if (!POLICIES.containsKey(type)) {
+            throw new IllegalArgumentException("Unknown policy type: " + type + ", expected one of " + POLICIES.keySet());
+        }
+
+        String[] simulationFiles = simFiles.split(",");
+        String cloudProperties = basePath.getParent().toString() + "/" + simulationFiles[0].trim();
+        String workloadProperties = basePath.getParent().toString() + "/" + simulationFiles[1].trim();
+        String outputProperties = basePath.getParent().toString() + "/" + simulationFiles[2].trim();
+        String antProperties = basePath.getParent().toString() + "/" + simulationFiles[3].trim();
+
+        runSimulation(simName, cloudProperties, workloadProperties, outputProperties, antProperties,
+                POLICIES.get(type), type, count);
+    }
+
     private static void runSimulation(String simName, String cloudProperties, String workloadProperties,
                                       String outputProperties, String antProperties,
                                       Function<Pair<Long, Properties>, IAutoscalingPolicy> scalingPolicy,
@@ -86,11 +123,22 @@ public class Simulation {
         try (InputStream is = Files.newInputStream(Paths.get(antProperties))) {
             antProps.load(is);
         }
+        if (antProps.containsKey("seed")) {
+            // each repetition gets its own seed, the same one for every policy
+            antProps.setProperty("seed", String.valueOf(Long.parseLong(antProps.getProperty("seed")) + count));
+        }
 
         Properties logProps = new Properties();
         try (InputStream is = Files.newInputStream(Paths.get(outputProperties))) {
             logProps.load(is);
         }
+        if (Boolean.parseBoolean(logProps.getProperty("Telemetry"))) {
+            Telemetry.configure(Paths.get(logProps.getProperty("FilePath") + "-" + type + "-" + count + ".tlm"), type);
+        }
+        if (Boolean.parseBoolean(logProps.getProperty("Metrics"))) {
+            Path runPath = Paths.get(logProps.getProperty("FilePath") + "-" + type + "-" + count).toAbsolutePath();
+            RunMetrics.configure(runPath.getParent(), runPath.getFileName().toString());
+        }
         logProps.setProperty("FilePath", logProps.getProperty("FilePath") + "-" + type + "-"+count+".log");
         CustomLog.configLogger(logProps);
 
@@ -117,6 +165,8 @@ public class Simulation {
 
         // Step 10 : stop the simulation and print the results
         CloudSim.stopSimulation();
+        Telemetry.close();
+        RunMetrics.close(broker.getServedSessions());
         CustomLog.printResults(WebSession.class, broker.getServedSessions());
 
         for (Map.Entry<Double, Map<Integer, double[]>> e : broker.getRecordedUtilisations()
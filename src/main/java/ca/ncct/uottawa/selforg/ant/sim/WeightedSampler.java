@@ -0,0 +1,51 @@
+package ca.ncct.uottawa.selforg.ant.sim;
+
+import java.util.Arrays;
+
+/**
+ * Picks one of a set of int keys with probability proportional to its weight, using a cumulative sum array and a
+ * binary search. The arrays are kept between uses, so refilling the sampler every step does not allocate once it
+ * has grown to the colony size.
+ */
+final class WeightedSampler {
+    private int[] keys = new int[16];
+    private double[] cumulative = new double[16];
+    private int size = 0;
+
+    void clear() {
+        size = 0;
+    }
+
+    void add(int key, double weight) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            cumulative = Arrays.copyOf(cumulative, size * 2);
+        }
+        keys[size] = key;
+        cumulative[size] = (size == 0 ? 0 : cumulative[size - 1]) + weight;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param random a uniform sample in [0, 1)
+     * @return the key whose cumulative weight interval contains random * total weight
+     */
+    int sample(double random) {
+        double target = random * cumulative[size - 1];
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] > target) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return keys[low];
+    }
+}
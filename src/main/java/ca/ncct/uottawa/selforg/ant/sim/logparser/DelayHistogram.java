@@ -0,0 +1,73 @@
+package ca.ncct.uottawa.selforg.ant.sim.logparser;
+
+/**
+ * Histogram of delays with a fixed relative precision, laid out like an HdrHistogram with 2 significant digits: values
+ * are counted in milliseconds, exactly below {@link #SUB_BUCKET_COUNT} ms and above that in buckets which double in
+ * width every time the value doubles, each split into {@link #SUB_BUCKET_COUNT} / 2 sub buckets. Memory does not
+ * depend on the number of delays recorded and a percentile is off by less than 1%.
+ */
+class DelayHistogram {
+    private static final double UNITS_PER_SECOND = 1000;
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+    private final long[] counts = new long[SUB_BUCKET_COUNT + (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT];
+    private long totalCount = 0;
+    private double maxDelay = 0;
+
+    /**
+     * @param delay delay in seconds, negative delays are counted as 0
+     */
+    void record(double delay) {
+        long value = Math.max(0, Math.round(delay * UNITS_PER_SECOND));
+        counts[indexOf(value)]++;
+        totalCount++;
+        maxDelay = Math.max(delay, maxDelay);
+    }
+
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100
+     * @return the delay in seconds which the percentile of the delays are at or below, the upper end of its bucket
+     * but never more than the largest delay recorded. NaN if nothing was recorded.
+     */
+    double getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return Double.NaN;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        int index = 0;
+        while (index < counts.length - 1) {
+            seen += counts[index];
+            if (seen >= target) {
+                break;
+            }
+            index++;
+        }
+        return Math.min(highestValueAt(index) / UNITS_PER_SECOND, maxDelay);
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // value >> shift keeps the top SUB_BUCKET_BITS bits of the value, which is in the upper half of the sub buckets
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT
+                + (int) (value >> shift) - SUB_BUCKET_HALF_COUNT;
+    }
+
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+        long lowest = (long) ((index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
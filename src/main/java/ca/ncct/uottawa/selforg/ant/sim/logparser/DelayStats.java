@@ -0,0 +1,43 @@
+package ca.ncct.uottawa.selforg.ant.sim.logparser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Session delay summary of a run, written to the .stats3 file. Besides the total, average and maximum it has the
+ * tail percentiles of the delays from a {@link DelayHistogram}.
+ */
+public class DelayStats {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"P50", "P90", "P99", "P99.9"};
+
+    private int sessionCount = 0;
+    private double maxDelay = 0;
+    private double totalDelay = 0;
+    private final DelayHistogram histogram = new DelayHistogram();
+
+    public void add(double delay) {
+        maxDelay = Math.max(delay, maxDelay);
+        totalDelay += delay;
+        sessionCount++;
+        histogram.record(delay);
+    }
+
+    public void write(Path path) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("Total sessions: " + sessionCount);
+        lines.add("Total delay: " + totalDelay);
+        lines.add("Avg delay: " + totalDelay / sessionCount);
+        lines.add("Max delay: " + maxDelay);
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            lines.add(PERCENTILE_NAMES[i] + " delay: " + histogram.getValueAtPercentile(PERCENTILES[i]));
+        }
+
+        Files.write(path, lines, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+}
@@ -7,6 +7,7 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -28,15 +29,11 @@ public class Grapher {
     public static void main(String[] args) throws Exception {
         File[] files = new File(args[0]).listFiles(file -> file.isFile() && file.toString().endsWith(".out"));
 
-        for (File f : files) {
-            makeGraph(f);
-        }
+        int failures = ParallelProcessor.run("Grapher", Arrays.asList(files), Grapher::makeGraph);
 
         File[] fileStats = new File(args[0]).listFiles(file -> file.isFile() && file.toString().endsWith(".stats"));
 
-        for (File f : fileStats) {
-            makeStatsGraph(f);
-        }
+        failures += ParallelProcessor.run("Grapher", Arrays.asList(fileStats), Grapher::makeStatsGraph);
 
         Properties props = new Properties();
         Path basePath = Paths.get(args[1]);
@@ -62,6 +59,10 @@ public class Grapher {
 
             writeLoadChart(sessionsSeries, simName, new File(args[0]).toPath());
         }
+
+        if (failures > 0) {
+            System.exit(1);
+        }
     }
 
     private static void makeStatsGraph(File f) throws IOException {
@@ -3,30 +3,27 @@ package ca.ncct.uottawa.selforg.ant.sim.logparser;
 
 import org.apache.commons.io.FilenameUtils;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.Arrays;
 
 public class LogParser {
 
-    private static final Pattern TIME_PATTERN = Pattern.compile("\\d*:\\d*:\\d*\\t(?<time>.*?)\\t.*\\d*:.*");
-    private static final Pattern CPU_PATTERN = Pattern.compile("\\scpu\\((?<cpuValue>(-)?\\d*.\\d*)\\)");
-    private static final Pattern SESSION_PATTERN = Pattern.compile("\\ssessions\\((?<sessions>\\d*)\\)");
-    private static final Pattern PHER_PATTERN = Pattern.compile("\\spheromone\\(\\d*=(?<pheromone>\\d*.\\d*)\\)");
+    private static final String CPU_TOKEN = "cpu(";
+    private static final String SESSION_TOKEN = "sessions(";
+    private static final String PHER_TOKEN = "pheromone(";
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws InterruptedException {
         File[] files = new File(args[0]).listFiles(file -> file.isFile() && file.toString().endsWith(".log"));
 
-        for (File f : files) {
-            processFile(f);
+        if (ParallelProcessor.run("LogParser", Arrays.asList(files), LogParser::processFile) > 0) {
+            System.exit(1);
         }
     }
 
@@ -35,74 +32,266 @@ public class LogParser {
         String basename = FilenameUtils.getBaseName(path.getFileName().toString());
         Path outPath = path.getParent().resolve(basename + ".out");
 
-        List<String> lines = Files.readAllLines(path);
-        List<String> outputLines = new ArrayList<>();
+        // single pass over the log, the autoscale lines go straight to the .out file and the session table after
+        // the IdealEnd header is only summarized, so memory use does not depend on the log size
+        boolean inResults = false;
+        DelayStats delayStats = new DelayStats();
 
-        List<String> scale = lines.stream().filter(l -> (l.contains("Simple-Autoscale") || l.contains("Ant-Autoscale")
-                || l.contains("Compressed-Autoscale"))
-                && !l.contains("Scale-Up") && !l.contains("Scale-Down") && !l.contains("actuating"))
-                .collect(Collectors.toList());
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(outPath, StandardCharsets.UTF_8)) {
+            writer.write("Time,Servers,AverageCPU,Sessions,Pheromone");
+            writer.newLine();
 
-        outputLines.add("Time,Servers,AverageCPU,Sessions,Pheromone");
-        scale.forEach(x -> outputLines.add(parseLine(x)));
-        Files.write(outPath, outputLines, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (isScaleLine(line)) {
+                    writer.write(parseLine(line));
+                    writer.newLine();
+                }
 
-        String firstLine = lines.stream().filter(x -> x.contains("IdealEnd")).findFirst().get();
-        int firstLineIdx = lines.indexOf(firstLine);
-
-        List<String> results = lines.subList(firstLineIdx + 1, lines.size());
-        double maxDelay = 0;
-        double avgDelay = 0;
+                if (inResults) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    String[] lineSplit = line.split(";");
+                    delayStats.add(Double.parseDouble(lineSplit[6].trim()));
+                } else if (line.contains("IdealEnd")) {
+                    inResults = true;
+                }
+            }
+        }
 
-        for (String line : results) {
-            String[] lineSplit = line.split(";");
-            Double delay = Double.parseDouble(lineSplit[6].trim());
-            maxDelay = Math.max(delay, maxDelay);
-            avgDelay += delay;
+        if (!inResults) {
+            throw new IllegalStateException("No session results (IdealEnd header) in " + path);
         }
 
-        Path outPath2 = path.getParent().resolve(basename + ".stats3");
-        List<String> outputLines2 = new ArrayList<>();
-        outputLines2.add("Total sessions: " + results.size());
-        outputLines2.add("Total delay: "+ avgDelay);
-        outputLines2.add("Avg delay: "+ avgDelay / results.size());
-        outputLines2.add("Max delay: "+ maxDelay);
+        delayStats.write(path.getParent().resolve(basename + ".stats3"));
+    }
 
-        Files.write(outPath2, outputLines2, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    private static boolean isScaleLine(String l) {
+        return (l.contains("Simple-Autoscale") || l.contains("Ant-Autoscale") || l.contains("Compressed-Autoscale"))
+                && !l.contains("Scale-Up") && !l.contains("Scale-Down") && !l.contains("actuating");
     }
 
+    /**
+     * Scans the line once for the time field and the cpu(x), sessions(n) and pheromone(id=x) tokens, each of
+     * which must follow a whitespace character, and sums their values. Same results as matching the line with the
+     * TIME, CPU, SESSION and PHER patterns it replaces.
+     */
     private static String parseLine(String line) {
         StringBuilder buff = new StringBuilder();
-        Matcher matcher = TIME_PATTERN.matcher(line);
-        while (matcher.find()) {
-            buff.append(matcher.group("time").trim()).append(',');
-        }
-        matcher = CPU_PATTERN.matcher(line);
+        appendTime(line, buff);
+
         double cpuSum = 0;
-        int count = 0;
-        while (matcher.find()) {
-            cpuSum += Double.valueOf(matcher.group("cpuValue"));
-            count++;
-        }
-        buff.append(count).append(',').append(cpuSum/count).append(',');
-        matcher = SESSION_PATTERN.matcher(line);
+        int cpuCount = 0;
         double sessCount = 0;
-        count = 0;
-        while (matcher.find()) {
-            sessCount += Double.valueOf(matcher.group("sessions"));
-            count++;
-        }
-        buff.append(sessCount).append(',');
-        matcher = PHER_PATTERN.matcher(line);
         double pher = 0;
-        count = 0;
-        while (matcher.find()) {
-            pher += Double.valueOf(matcher.group("pheromone"));
-            count++;
+        int pherCount = 0;
+        NumberScanner scanner = new NumberScanner(line);
+
+        for (int i = 0; i < line.length() - 1; i++) {
+            if (!isSpace(line.charAt(i))) {
+                continue;
+            }
+            int start = i + 1;
+            if (line.startsWith(CPU_TOKEN, start)) {
+                if (scanner.scanDecimal(start + CPU_TOKEN.length(), true)) {
+                    cpuSum += scanner.value;
+                    cpuCount++;
+                }
+            } else if (line.startsWith(SESSION_TOKEN, start)) {
+                if (scanner.scanInteger(start + SESSION_TOKEN.length())) {
+                    sessCount += scanner.value;
+                }
+            } else if (line.startsWith(PHER_TOKEN, start)) {
+                int idx = start + PHER_TOKEN.length();
+                while (idx < line.length() && isDigit(line.charAt(idx))) {
+                    idx++;
+                }
+                if (idx < line.length() && line.charAt(idx) == '=' && scanner.scanDecimal(idx + 1, false)) {
+                    pher += scanner.value;
+                    pherCount++;
+                }
+            }
         }
-        buff.append(pher/count).append(',');
+
+        buff.append(cpuCount).append(',').append(cpuSum/cpuCount).append(',');
+        buff.append(sessCount).append(',');
+        buff.append(pher/pherCount).append(',');
         buff.deleteCharAt(buff.length() - 1);
 
         return buff.toString();
     }
+
+    /**
+     * Appends the field after the first h:m:s tab as time, as long as a ':' follows the tab that ends it.
+     */
+    private static void appendTime(String line, StringBuilder buff) {
+        for (int tab = line.indexOf('\t'); tab >= 0; tab = line.indexOf('\t', tab + 1)) {
+            if (!endsWithClock(line, tab)) {
+                continue;
+            }
+            int end = line.indexOf('\t', tab + 1);
+            if (end >= 0 && line.lastIndexOf(':') > end) {
+                // trimmed the same way as String.trim
+                int from = tab + 1;
+                while (from < end && line.charAt(from) <= ' ') {
+                    from++;
+                }
+                while (end > from && line.charAt(end - 1) <= ' ') {
+                    end--;
+                }
+                buff.append(line, from, end).append(',');
+            }
+            return;
+        }
+    }
+
+    // true if the text before end is digits:digits:digits, where the digits may be empty
+    private static boolean endsWithClock(String line, int end) {
+        int idx = end - 1;
+        for (int colons = 0; colons < 2; colons++) {
+            while (idx >= 0 && isDigit(line.charAt(idx))) {
+                idx--;
+            }
+            if (idx < 0 || line.charAt(idx) != ':') {
+                return false;
+            }
+            idx--;
+        }
+        return true;
+    }
+
+    // the \\s regex character class
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Parses numbers in place from the line into {@link #value}, without substrings or boxing.
+     */
+    private static class NumberScanner {
+        // largest number of digits whose value is exactly representable as a double
+        private static final int MAX_EXACT_DIGITS = 15;
+        private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_DIGITS + 1];
+
+        static {
+            POWERS_OF_TEN[0] = 1;
+            for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+                POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+            }
+        }
+
+        private final String line;
+        private double value;
+
+        NumberScanner(String line) {
+            this.line = line;
+        }
+
+        /**
+         * Matches digits ')' from start.
+         */
+        boolean scanInteger(int start) {
+            int idx = start;
+            long number = 0;
+            while (idx < line.length() && isDigit(line.charAt(idx))) {
+                number = number * 10 + (line.charAt(idx) - '0');
+                idx++;
+            }
+            if (idx >= line.length() || line.charAt(idx) != ')') {
+                return false;
+            }
+            if (idx == start || idx - start > MAX_EXACT_DIGITS) {
+                // empty or too long to be exact, leave it to the JDK
+                value = Double.parseDouble(line.substring(start, idx));
+                return true;
+            }
+            value = number;
+            return true;
+        }
+
+        /**
+         * Matches [-]digits(any char)digits ')' from start, e.g. 0.53), trying the alternatives in the same order
+         * as the [-]?\\d*.\\d*\\) regex would.
+         */
+        boolean scanDecimal(int start, boolean signed) {
+            int end = -1;
+            boolean negative = false;
+            if (signed && start < line.length() && line.charAt(start) == '-') {
+                end = matchUnsigned(start + 1);
+                negative = end >= 0;
+            }
+            if (end < 0) {
+                end = matchUnsigned(start);
+            }
+            if (end < 0) {
+                return false;
+            }
+
+            int idx = negative ? start + 1 : start;
+            long number = 0;
+            int digits = 0;
+            int fractionDigits = 0;
+            boolean separator = false;
+            for (int i = idx; i < end; i++) {
+                char c = line.charAt(i);
+                if (isDigit(c)) {
+                    number = number * 10 + (c - '0');
+                    digits++;
+                    if (separator) {
+                        fractionDigits++;
+                    }
+                } else if (c == '.' && !separator) {
+                    separator = true;
+                } else {
+                    digits = -1;
+                    break;
+                }
+            }
+
+            if (digits <= 0 || digits > MAX_EXACT_DIGITS) {
+                // too long to be exact, or not a plain decimal number, leave it to the JDK
+                value = Double.parseDouble(line.substring(start, end));
+                return true;
+            }
+
+            // both parts are exact, so the single division is correctly rounded just like Double.parseDouble
+            value = number / POWERS_OF_TEN[fractionDigits];
+            if (negative) {
+                value = -value;
+            }
+            return true;
+        }
+
+        /**
+         * @return the index of the closing ')' of digits(any char)digits) from start, or -1 if there is none
+         */
+        private int matchUnsigned(int start) {
+            int digitsEnd = skipDigits(start);
+            // greedy digits, any char, digits
+            if (digitsEnd < line.length()) {
+                int close = skipDigits(digitsEnd + 1);
+                if (close < line.length() && line.charAt(close) == ')') {
+                    return close;
+                }
+            }
+            // the any char is the last of the digits
+            if (digitsEnd > start && digitsEnd < line.length() && line.charAt(digitsEnd) == ')') {
+                return digitsEnd;
+            }
+            return -1;
+        }
+
+        private int skipDigits(int idx) {
+            while (idx < line.length() && isDigit(line.charAt(idx))) {
+                idx++;
+            }
+            return idx;
+        }
+    }
 }
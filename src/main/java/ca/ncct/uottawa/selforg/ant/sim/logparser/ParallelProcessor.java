@@ -0,0 +1,52 @@
+package ca.ncct.uottawa.selforg.ant.sim.logparser;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a post-processing task over many files on a bounded pool. A failing file is reported and does not stop the
+ * others. The pool size is the number of cores, or the workers system property (-Dworkers=n).
+ */
+class ParallelProcessor {
+
+    interface Task<T> {
+        void process(T item) throws Exception;
+    }
+
+    /**
+     * @return the number of items which failed
+     */
+    static <T> int run(String name, List<T> items, Task<T> task) throws InterruptedException {
+        int workers = Integer.getInteger("workers", Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(workers, items.size())));
+        AtomicInteger done = new AtomicInteger();
+        Map<T, Exception> failures = new ConcurrentHashMap<>();
+        long start = System.nanoTime();
+
+        for (T item : items) {
+            executor.submit(() -> {
+                try {
+                    task.process(item);
+                    System.err.printf("%s [%d/%d] %s%n", name, done.incrementAndGet(), items.size(), item);
+                } catch (Exception e) {
+                    failures.put(item, e);
+                    System.err.printf("%s [%d/%d] %s FAILED: %s%n", name, done.incrementAndGet(), items.size(),
+                            item, e);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+
+        System.err.printf("%s: %d of %d succeeded, %d failed in %d s%n", name, items.size() - failures.size(),
+                items.size(), failures.size(), TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+        failures.forEach((item, e) -> System.err.println("  " + item + ": " + e));
+
+        return failures.size();
+    }
+}
@@ -0,0 +1,196 @@
+package ca.ncct.uottawa.selforg.ant.sim.logparser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.DoubleSummaryStatistics;
+import java.util.List;
+
+/**
+ * Aggregates of the .out samples of a test, updated as every sample arrives: the hourly averages of the .stats file
+ * and the scale counts and provisioning times of the .stats2 file. Samples are added hour by hour between
+ * {@link #beginHour()} and {@link #endHour()}.
+ */
+public class StatsAccumulator {
+  public static final int ONE_HOUR = 60 * 60;
+
+  private static final double[] MIN_VALS = {0.1, 0.2, 0.3, 0.4, 0.5};
+  private static final double[] UNDER_PROVISIONED_VALS = {0.7, 0.8, 0.9, 0.95};
+
+  private final List<String> hourlyAverages = new ArrayList<>();
+  private DoubleSummaryStatistics cpuStats = new DoubleSummaryStatistics();
+  private DoubleSummaryStatistics sessionStats = new DoubleSummaryStatistics();
+  private DoubleSummaryStatistics serverStats = new DoubleSummaryStatistics();
+  private double hourStartTime = -1;
+
+  private double lastServCount = Double.NaN;
+  private int scaleUpCount = 0;
+  private int scaleDownCount = 0;
+
+  private final ProvisioningTime[] overProvisioned = new ProvisioningTime[MIN_VALS.length];
+  private final ProvisioningTime[] underProvisioned = new ProvisioningTime[UNDER_PROVISIONED_VALS.length];
+
+  public StatsAccumulator() {
+    for (int i = 0; i < MIN_VALS.length; i++) {
+      overProvisioned[i] = new ProvisioningTime(Comparison.LESS_THAN, MIN_VALS[i]);
+    }
+    for (int i = 0; i < UNDER_PROVISIONED_VALS.length; i++) {
+      underProvisioned[i] = new ProvisioningTime(Comparison.GREATER_THAN, UNDER_PROVISIONED_VALS[i]);
+    }
+  }
+
+  public void beginHour() {
+    hourStartTime = -1;
+  }
+
+  public void addResult(double servers, double cpu, double sessions, double time) {
+    if (hourStartTime == -1) {
+      hourStartTime = time;
+    }
+    serverStats.accept(servers);
+    cpuStats.accept(cpu);
+    sessionStats.accept(sessions);
+
+    if (Double.isNaN(lastServCount)) {
+      lastServCount = servers;
+    }
+    if (servers > lastServCount) {
+      scaleUpCount++;
+    } else if (servers < lastServCount) {
+      scaleDownCount++;
+    }
+    lastServCount = servers;
+
+    for (ProvisioningTime provisioningTime : overProvisioned) {
+      provisioningTime.add(servers, cpu, time, hourStartTime);
+    }
+    for (ProvisioningTime provisioningTime : underProvisioned) {
+      provisioningTime.add(servers, cpu, time, hourStartTime);
+    }
+  }
+
+  /**
+   * Appends the averages of the hour, the same compensated sums as DoubleStream.average() are used.
+   */
+  public void endHour() {
+    hourlyAverages.add(String.valueOf(cpuStats.getAverage()) + ',' + sessionStats.getAverage() + ','
+        + serverStats.getAverage() + ',' + sessionStats.getAverage() / serverStats.getAverage());
+    cpuStats = new DoubleSummaryStatistics();
+    sessionStats = new DoubleSummaryStatistics();
+    serverStats = new DoubleSummaryStatistics();
+  }
+
+  public List<String> getStats() {
+    return hourlyAverages;
+  }
+
+  public int getScaleUpCount() {
+    return scaleUpCount;
+  }
+
+  public int getScaleDownCount() {
+    return scaleDownCount;
+  }
+
+  /**
+   * @param index index of the threshold in MIN_VALS
+   */
+  public double getOverProvisionedTime(int index) {
+    return overProvisioned[index].get();
+  }
+
+  /**
+   * @param index index of the threshold in UNDER_PROVISIONED_VALS
+   */
+  public double getUnderProvisionedTime(int index) {
+    return underProvisioned[index].get();
+  }
+
+  /**
+   * Writes the basename.stats and basename.stats2 files to the directory.
+   */
+  public void write(Path dir, String basename) throws IOException {
+    write(dir, basename, "stats");
+  }
+
+  /**
+   * Writes the basename.extension and basename.extension2 files to the directory.
+   */
+  public void write(Path dir, String basename, String extension) throws IOException {
+    Files.write(dir.resolve(basename + "." + extension), getStats(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+    List<String> stats2 = new ArrayList<>();
+
+    stats2.add("Scale Up Count:" + getScaleUpCount());
+    stats2.add("Scale Down Count:" + getScaleDownCount());
+    for (int i = 0; i < MIN_VALS.length; i++) {
+      stats2.add("Over provisioned time - " + MIN_VALS[i] + ":" + getOverProvisionedTime(i));
+    }
+    for (int i = 0; i < UNDER_PROVISIONED_VALS.length; i++) {
+      stats2.add("Under provisioned time - " + UNDER_PROVISIONED_VALS[i] + ":" + getUnderProvisionedTime(i));
+    }
+
+    Files.write(dir.resolve(basename + "." + extension + "2"), stats2, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  private interface Comparison {
+    Comparison GREATER_THAN = (left, right) -> left > right;
+    Comparison LESS_THAN = (left, right) -> left < right;
+
+    boolean test(double left, double right);
+  }
+
+  /**
+   * Average time per test the cpu stays past a threshold while there is more than one server. A test starts whenever
+   * the time goes back.
+   */
+  private static class ProvisioningTime {
+    private final Comparison func;
+    private final double threshold;
+    private double totalTime = 0;
+    private double startTime = -1;
+    private double currTime = -1;
+    private double endTimeLast = -1;
+    private int testCount = 1;
+
+    ProvisioningTime(Comparison func, double threshold) {
+      this.func = func;
+      this.threshold = threshold;
+    }
+
+    void add(double servers, double cpu, double time, double hourStartTime) {
+      if (time < currTime) {
+        endTimeLast = currTime;
+        testCount++;
+      }
+      currTime = time;
+
+      if (servers != 1.0d) {
+        if (func.test(cpu, threshold)) {
+          if (startTime == -1) {
+            startTime = currTime;
+            endTimeLast = -1;
+          }
+        } else if (startTime != -1) {
+          if (endTimeLast == -1) {
+            totalTime += currTime - startTime;
+          } else {
+            totalTime += endTimeLast - startTime;
+            totalTime += currTime - hourStartTime;
+          }
+          startTime = -1;
+        }
+      } else {
+        startTime = -1;
+      }
+    }
+
+    double get() {
+      return totalTime / testCount;
+    }
+  }
+}
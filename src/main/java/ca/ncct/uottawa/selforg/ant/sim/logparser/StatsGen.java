@@ -1,224 +1,101 @@
 package ca.ncct.uottawa.selforg.ant.sim.logparser;
 
-import com.google.common.collect.ImmutableList;
-import org.apache.commons.lang3.tuple.Pair;
-import org.apache.commons.lang3.tuple.Triple;
-
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 public class StatsGen {
-  private static Map<String, Results> resultsByTest = new HashMap<>();
-  private static final int ONE_HOUR = 60 * 60;
-
-  private static final List<Double> MIN_VALS = ImmutableList.of(0.1, 0.2, 0.3, 0.4, 0.5);
-  private static final List<Double> MAX_VALS = ImmutableList.of(0.5, 0.6, 0.7, 0.8, 0.9, 0.95);
-
-  public static void main(String[] args) throws IOException {
+  public static void main(String[] args) throws InterruptedException {
     File[] files = new File(args[0]).listFiles(file -> file.isFile() && file.toString().endsWith(".out"));
 
+    // the repetitions of a test are merged into one result, so only different tests run in parallel
+    Map<String, List<File>> filesByTest = new LinkedHashMap<>();
     for (File f : files) {
-      processFile(f);
+      String filename = f.getName();
+      filesByTest.computeIfAbsent(filename.substring(0, filename.lastIndexOf("-")), k -> new ArrayList<>()).add(f);
     }
 
-    for (Map.Entry<String, Results> entry : resultsByTest.entrySet()) {
-      Path outPath = files[0].toPath().getParent().resolve(entry.getKey() + ".stats");
-
-      Files.write(outPath, entry.getValue().getStats(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
-          StandardOpenOption.TRUNCATE_EXISTING);
-
-      Path outPath2 = files[0].toPath().getParent().resolve(entry.getKey() + ".stats2");
-      List<String> stats2 = new ArrayList<>();
-
-      stats2.add("Scale Up Count:" + entry.getValue().getScaleUpCount());
-      stats2.add("Scale Down Count:" + entry.getValue().getScaleDownCount());
-      stats2.add("Over provisioned time - 0.1:" + entry.getValue().getOverProvisionedTime(0.1));
-      stats2.add("Over provisioned time - 0.2:" + entry.getValue().getOverProvisionedTime(0.2));
-      stats2.add("Over provisioned time - 0.3:" + entry.getValue().getOverProvisionedTime(0.3));
-      stats2.add("Over provisioned time - 0.4:" + entry.getValue().getOverProvisionedTime(0.4));
-      stats2.add("Over provisioned time - 0.5:" + entry.getValue().getOverProvisionedTime(0.5));
-      stats2.add("Under provisioned time - 0.7:" + entry.getValue().getUnderProvisionedTime(0.7));
-      stats2.add("Under provisioned time - 0.8:" + entry.getValue().getUnderProvisionedTime(0.8));
-      stats2.add("Under provisioned time - 0.9:" + entry.getValue().getUnderProvisionedTime(0.9));
-      stats2.add("Under provisioned time - 0.95:" + entry.getValue().getUnderProvisionedTime(0.95));
-
-      Files.write(outPath2, stats2, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
-          StandardOpenOption.TRUNCATE_EXISTING);
+    if (ParallelProcessor.run("StatsGen", new ArrayList<>(filesByTest.keySet()),
+        testKey -> processTest(testKey, filesByTest.get(testKey))) > 0) {
+      System.exit(1);
     }
   }
 
-  private static void processFile(File f) throws IOException {
-    Path path = f.toPath();
-    String filename = path.getFileName().toString();
-
-    String testKey = filename.substring(0, filename.lastIndexOf("-"));
-    Results newRes = resultsByTest.containsKey(testKey) ? resultsByTest.get(testKey) : new Results();
-
-    List<String> lines = Files.readAllLines(path);
-    lines.remove(0);
-    lines.forEach(x -> newRes.addResult(parseLine(x), Double.valueOf(x.substring(0, x.indexOf(",")))));
-    resultsByTest.put(testKey, newRes);
-  }
-
-  private static Triple<Double, Double, Double> parseLine(String line) {
-    String[] lineSplit = line.split(",");
-    return Triple.of(Double.parseDouble(lineSplit[1]), Double.parseDouble(lineSplit[2]),
-        Double.parseDouble(lineSplit[3]));
-  }
-
-  private static class Results {
-    private Map<Double, Double> startTimes = new HashMap<>();
-    private Map<Double, Double> totalTimes = new HashMap<>();
-    private Double timeOneServer = 0d;
-    private Double timeOneServerStart = -1d;
-
-    private static Function<Pair<Double, Double>, Boolean> greaterThanComparison = vals -> vals.getLeft() > vals
-        .getRight();
-    private static Function<Pair<Double, Double>, Boolean> lessThanComparison = vals -> vals.getLeft() < vals
-        .getRight();
-
-    List<HourlyResult> hourlyResults = new ArrayList<>();
-
-    void resetTimes() {
-      startTimes.clear();
-      timeOneServerStart = -1d;
-    }
-
-    void addResult(Triple<Double, Double, Double> results, Double time) {
-      int resIndex = (int) (time / ONE_HOUR);
-      if (hourlyResults.size() <= resIndex) {
-        hourlyResults.add(new HourlyResult());
+  /**
+   * Streams the repetitions of a test hour by hour: every hour takes the samples of that hour from each file in turn,
+   * which is the order the samples used to be bucketed in when all of them were loaded. Only the current row of each
+   * file is held in memory.
+   */
+  private static void processTest(String testKey, List<File> testFiles) throws IOException {
+    StatsAccumulator results = new StatsAccumulator();
+    List<OutReader> readers = new ArrayList<>();
+    try {
+      for (File f : testFiles) {
+        readers.add(new OutReader(f));
       }
-      hourlyResults.get(resIndex).addResult(results, time);
 
-      if (results.getLeft() == 1) {
-        timeOneServerStart = time;
-      } else if (timeOneServerStart != -1){
-        timeOneServer += time - timeOneServerStart;
-        timeOneServerStart = -1d;
-      }
-
-      for (Double minVal : MIN_VALS) {
-        // one server so stop the counting
-        if (results.getLeft() == 1 && startTimes.containsKey(minVal)) {
-          if (!totalTimes.containsKey(minVal)) {
-            totalTimes.put(minVal, 0d);
+      for (int hour = 0; readers.stream().anyMatch(OutReader::hasRow); hour++) {
+        results.beginHour();
+        for (OutReader reader : readers) {
+          while (reader.hasRow() && (int) (reader.time / StatsAccumulator.ONE_HOUR) <= hour) {
+            results.addResult(reader.servers, reader.cpu, reader.sessions, reader.time);
+            reader.next();
           }
-
-          totalTimes.put(minVal, totalTimes.get(minVal) + time - startTimes.get(minVal));
-          startTimes.remove(minVal);
-        } else if (results.getLeft() != 1 && results.getMiddle() < minVal && !startTimes.containsKey(minVal)) {
-          startTimes.put(minVal, time);
         }
+        results.endHour();
       }
-    }
-
-    List<String> getStats() {
-      return hourlyResults.stream().map(HourlyResult::getAverages).collect(Collectors.toList());
-    }
-
-    int getScaleUpCount() {
-      return getScaleCount(greaterThanComparison);
-    }
-
-    int getScaleDownCount() {
-      return getScaleCount(lessThanComparison);
-    }
-
-    int getScaleCount(Function<Pair<Double, Double>, Boolean> func) {
-      int scaleUpCount = 0;
-      double lastServCount = hourlyResults.get(0).serverValues.get(0);
-
-      for (HourlyResult res : hourlyResults) {
-        for (Double servCount : res.serverValues) {
-          if (func.apply(Pair.of(servCount, lastServCount))) {
-            scaleUpCount++;
-          }
-          lastServCount = servCount;
-        }
+    } finally {
+      for (OutReader reader : readers) {
+        reader.close();
       }
-
-      return scaleUpCount;
     }
 
-    double getOverProvisionedTime(double threshold) {
-      return getTime(lessThanComparison, threshold);
-    }
+    results.write(testFiles.get(0).toPath().getParent(), testKey);
+  }
 
-    double getUnderProvisionedTime(double threshold) {
-      return getTime(greaterThanComparison, threshold);
+  /**
+   * Reads the rows of a .out file one at a time.
+   */
+  private static class OutReader implements AutoCloseable {
+    private final BufferedReader reader;
+    private boolean hasRow;
+    double time;
+    double servers;
+    double cpu;
+    double sessions;
+
+    OutReader(File f) throws IOException {
+      reader = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8);
+      // header
+      reader.readLine();
+      next();
     }
 
-    double getTime(Function<Pair<Double, Double>, Boolean> func, double threshold) {
-      double totalTime = 0;
-      double startTime = -1;
-      double currTime = -1;
-      double endTimeLast = -1;
-      int testCount = 1;
-
-      for (HourlyResult res : hourlyResults) {
-        int idx = 0;
-        for (Double cpuValue : res.cpuValues) {
-          if (res.timeValues.get(idx) < currTime) {
-            endTimeLast = currTime;
-            testCount++;
-          }
-          currTime = res.timeValues.get(idx);
-
-          if (res.serverValues.get(idx) != 1.0d) {
-            if (func.apply(Pair.of(cpuValue, threshold))) {
-              if (startTime == -1) {
-                startTime = currTime;
-                endTimeLast = -1;
-              }
-            } else if (startTime != -1) {
-              if (endTimeLast == -1) {
-                totalTime += currTime - startTime;
-              } else {
-                totalTime += endTimeLast - startTime;
-                totalTime += currTime - res.timeValues.get(0);
-              }
-              startTime = -1;
-            }
-          } else {
-            startTime = -1;
-          }
-          idx++;
-        }
-      }
-
-      return totalTime / testCount;
+    boolean hasRow() {
+      return hasRow;
     }
-  }
 
-  private static class HourlyResult {
-    List<Double> cpuValues = new ArrayList<>();
-    List<Double> sessionValues = new ArrayList<>();
-    List<Double> serverValues = new ArrayList<>();
-    List<Double> timeValues = new ArrayList<>();
-
-    void addResult(Triple<Double, Double, Double> results, Double time) {
-      serverValues.add(results.getLeft());
-      cpuValues.add(results.getMiddle());
-      sessionValues.add(results.getRight());
-      timeValues.add(time);
+    void next() throws IOException {
+      String line = reader.readLine();
+      hasRow = line != null;
+      if (hasRow) {
+        String[] lineSplit = line.split(",");
+        time = Double.parseDouble(lineSplit[0]);
+        servers = Double.parseDouble(lineSplit[1]);
+        cpu = Double.parseDouble(lineSplit[2]);
+        sessions = Double.parseDouble(lineSplit[3]);
+      }
     }
 
-    String getAverages() {
-      return String.valueOf(cpuValues.stream().mapToDouble(value -> value).average().orElse(
-          0d)) + ',' + sessionValues.stream().mapToDouble(value -> value).average().orElse(
-          0d) + ',' + serverValues.stream().mapToDouble(value -> value).average().orElse(
-          0d) + ',' + sessionValues.stream().mapToDouble(value -> value).average().orElse(
-          0d) / serverValues.stream().mapToDouble(value -> value).average().orElse(0d);
+    @Override
+    public void close() throws IOException {
+      reader.close();
     }
   }
 }
@@ -0,0 +1,180 @@
+package ca.ncct.uottawa.selforg.ant.sim.logparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges the per-run summaries which the simulation writes with Metrics=true (test-repetition.metrics, .metrics2 and
+ * .metrics3, in the formats of .stats, .stats2 and .stats3) into one test.metrics, .metrics2 and .metrics3 per test.
+ * A run summary holds the same values as the summaries of the log of that run alone, but StatsGen pools the .out
+ * samples of all repetitions of a test, which are gone once a run has written its summary, so the merged files are
+ * not the test.stats and .stats2 of StatsGen:
+ * <ul>
+ * <li>an hourly row is the mean of the hourly averages of the runs, the same as the pooled average only when the runs
+ * have as many samples in the hour</li>
+ * <li>the scale counts, sessions and delays are summed over the runs, StatsGen also counts the change of the server
+ * count where the samples of one repetition follow those of another</li>
+ * <li>the provisioning times are the mean of the total time of each run, StatsGen divides the pooled time by every
+ * point where the pooled samples go back in time, about once per repetition and hour</li>
+ * <li>the max delay is the max over the runs, the avg delay the total delay over the total sessions and the delay
+ * percentiles the mean over the runs, there is no .stats3 per test to compare with</li>
+ * </ul>
+ * As in StatsGen, the servers are counted like LogParser counts them, twice per server for the compressed policy.
+ * Usage: StatsMerge dir
+ */
+public class StatsMerge {
+  public static final String EXTENSION = "metrics";
+
+  private static final List<String> SUMMED = Arrays.asList("Scale Up Count", "Scale Down Count",
+      "Total sessions", "Total delay");
+
+  private final List<double[]> hourSums = new ArrayList<>();
+  private final List<Integer> hourRuns = new ArrayList<>();
+  // by label in file order, the sum or the max over the runs
+  private final Map<String, Double> stats2 = new LinkedHashMap<>();
+  private final Map<String, Double> stats3 = new LinkedHashMap<>();
+  private int runs = 0;
+  private int delayRuns = 0;
+
+  public static void main(String[] args) throws InterruptedException {
+    File[] files = new File(args[0]).listFiles(file -> file.isFile() && isRunSummary(file.getName()));
+
+    Map<String, List<String>> runsByTest = new LinkedHashMap<>();
+    for (File f : files) {
+      String basename = f.getName().substring(0, f.getName().length() - EXTENSION.length() - 2);
+      runsByTest.computeIfAbsent(basename.substring(0, basename.lastIndexOf('-')), k -> new ArrayList<>())
+          .add(basename);
+    }
+
+    Path dir = new File(args[0]).toPath();
+    if (ParallelProcessor.run("StatsMerge", new ArrayList<>(runsByTest.keySet()), testKey -> {
+      StatsMerge merge = new StatsMerge();
+      for (String run : runsByTest.get(testKey)) {
+        merge.add(dir, run);
+      }
+      merge.write(dir, testKey);
+    }) > 0) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * @return whether the file is the .metrics2 of a run, named test-repetition, not a merged summary
+   */
+  private static boolean isRunSummary(String filename) {
+    if (!filename.endsWith("." + EXTENSION + "2")) {
+      return false;
+    }
+    String basename = filename.substring(0, filename.length() - EXTENSION.length() - 2);
+    String repetition = basename.substring(basename.lastIndexOf('-') + 1);
+    return !repetition.isEmpty() && repetition.chars().allMatch(Character::isDigit);
+  }
+
+  /**
+   * Adds the summaries of a run, the .metrics3 is optional.
+   */
+  public void add(Path dir, String runBasename) throws IOException {
+    List<String> hours = Files.readAllLines(dir.resolve(runBasename + "." + EXTENSION), StandardCharsets.UTF_8);
+    for (int hour = 0; hour < hours.size(); hour++) {
+      if (hour == hourSums.size()) {
+        hourSums.add(new double[3]);
+        hourRuns.add(0);
+      }
+      String[] vals = hours.get(hour).split(",");
+      for (int i = 0; i < 3; i++) {
+        hourSums.get(hour)[i] += Double.parseDouble(vals[i]);
+      }
+      hourRuns.set(hour, hourRuns.get(hour) + 1);
+    }
+
+    readLabelled(dir.resolve(runBasename + "." + EXTENSION + "2"), stats2);
+    Path delays = dir.resolve(runBasename + "." + EXTENSION + "3");
+    if (Files.exists(delays)) {
+      readLabelled(delays, stats3);
+      delayRuns++;
+    }
+    runs++;
+  }
+
+  private static void readLabelled(Path path, Map<String, Double> values) throws IOException {
+    for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+      int colon = line.lastIndexOf(':');
+      String label = line.substring(0, colon);
+      double value = Double.parseDouble(line.substring(colon + 1).trim());
+      values.merge(label, value, "Max delay".equals(label) ? Math::max : Double::sum);
+    }
+  }
+
+  public int getRunCount() {
+    return runs;
+  }
+
+  /**
+   * @return the merged .metrics2 and .metrics3 values by label, then the average cpu and servers over the hours
+   */
+  public Map<String, Double> getSummary() {
+    Map<String, Double> summary = new LinkedHashMap<>();
+    stats2.forEach((label, value) -> summary.put(label, merged(label, value, runs)));
+    stats3.forEach((label, value) -> summary.put(label, merged(label, value, delayRuns)));
+    if (summary.containsKey("Avg delay")) {
+      summary.put("Avg delay", stats3.get("Total delay") / stats3.get("Total sessions"));
+    }
+
+    double cpu = 0;
+    double servers = 0;
+    for (int hour = 0; hour < hourSums.size(); hour++) {
+      cpu += hourSums.get(hour)[0] / hourRuns.get(hour);
+      servers += hourSums.get(hour)[2] / hourRuns.get(hour);
+    }
+    summary.put("Avg cpu", cpu / hourSums.size());
+    summary.put("Avg servers", servers / hourSums.size());
+    return summary;
+  }
+
+  private static double merged(String label, double value, int runs) {
+    return SUMMED.contains(label) || "Max delay".equals(label) ? value : value / runs;
+  }
+
+  /**
+   * Writes the testKey.metrics, .metrics2 and, if the runs had one, .metrics3 files to the directory.
+   */
+  public void write(Path dir, String testKey) throws IOException {
+    List<String> hours = new ArrayList<>();
+    for (int hour = 0; hour < hourSums.size(); hour++) {
+      double[] sums = hourSums.get(hour);
+      int count = hourRuns.get(hour);
+      hours.add(String.valueOf(sums[0] / count) + ',' + sums[1] / count + ',' + sums[2] / count + ','
+          + sums[1] / sums[2]);
+    }
+    Files.write(dir.resolve(testKey + "." + EXTENSION), hours, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+
+    Map<String, Double> summary = getSummary();
+    List<String> lines2 = new ArrayList<>();
+    stats2.keySet().forEach(label -> lines2.add(label + ":" + format(label, summary.get(label))));
+    Files.write(dir.resolve(testKey + "." + EXTENSION + "2"), lines2, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+    if (delayRuns > 0) {
+      List<String> lines3 = new ArrayList<>();
+      stats3.keySet().forEach(label -> lines3.add(label + ": " + format(label, summary.get(label))));
+      Files.write(dir.resolve(testKey + "." + EXTENSION + "3"), lines3, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+  }
+
+  // the counts are written as integers, as the run summaries have them
+  private static String format(String label, double value) {
+    return label.endsWith("Count") || "Total sessions".equals(label) ? String.valueOf((long) value)
+        : String.valueOf(value);
+  }
+}
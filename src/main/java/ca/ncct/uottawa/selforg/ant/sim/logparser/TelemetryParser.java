@@ -0,0 +1,92 @@
+package ca.ncct.uottawa.selforg.ant.sim.logparser;
+
+import ca.ncct.uottawa.selforg.ant.sim.telemetry.TelemetryReader;
+import ca.ncct.uottawa.selforg.ant.sim.telemetry.TelemetryWriter;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Writes the same .out rows as {@link LogParser} from the binary .tlm telemetry streams, without going through the
+ * text log. Server counts are the number of servers in the record, where the compressed policy log lines list every
+ * server twice.
+ */
+public class TelemetryParser {
+
+    public static void main(String[] args) throws InterruptedException {
+        File[] files = new File(args[0]).listFiles(file -> file.isFile() && file.toString().endsWith(".tlm"));
+
+        if (ParallelProcessor.run("TelemetryParser", Arrays.asList(files), TelemetryParser::processFile) > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void processFile(File f) throws IOException {
+        Path path = f.toPath();
+        String basename = FilenameUtils.getBaseName(path.getFileName().toString());
+        Path outPath = path.getParent().resolve(basename + ".out");
+
+        try (TelemetryReader reader = new TelemetryReader(path);
+             BufferedWriter writer = Files.newBufferedWriter(outPath, StandardCharsets.UTF_8)) {
+            writer.write("Time,Servers,AverageCPU,Sessions,Pheromone");
+            writer.newLine();
+
+            Row row = null;
+            while (reader.next()) {
+                if (reader.getType() == TelemetryWriter.SERVERS) {
+                    if (row != null) {
+                        row.write(writer);
+                    } else {
+                        row = new Row();
+                    }
+                    row.time = reader.getTime();
+                    row.servers = reader.getCount();
+                    row.cpuSum = 0;
+                    row.sessions = 0;
+                    row.pheromone = Double.NaN;
+                    for (int i = 0; i < reader.getCount(); i++) {
+                        row.cpuSum += reader.getCpu(i);
+                        row.sessions += reader.getSessions(i);
+                    }
+                } else if (reader.getType() == TelemetryWriter.PHEROMONE && row != null
+                        && reader.getTime() == row.time) {
+                    double pher = 0;
+                    for (int i = 0; i < reader.getCount(); i++) {
+                        pher += reader.getPheromone(i);
+                    }
+                    row.pheromone = pher / reader.getCount();
+                }
+            }
+            if (row != null) {
+                row.write(writer);
+            }
+        }
+    }
+
+    private static class Row {
+        private double time;
+        private int servers;
+        private double cpuSum;
+        private double sessions;
+        private double pheromone;
+
+        void write(BufferedWriter writer) throws IOException {
+            writer.write(String.valueOf(time));
+            writer.write(',');
+            writer.write(String.valueOf(servers));
+            writer.write(',');
+            writer.write(String.valueOf(cpuSum / servers));
+            writer.write(',');
+            writer.write(String.valueOf(sessions));
+            writer.write(',');
+            writer.write(String.valueOf(pheromone));
+            writer.newLine();
+        }
+    }
+}
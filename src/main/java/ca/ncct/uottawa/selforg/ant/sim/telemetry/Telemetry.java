@@ -0,0 +1,35 @@
+package ca.ncct.uottawa.selforg.ant.sim.telemetry;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Global telemetry stream of a simulation run, configured once per run like CustomLog. When it is not configured
+ * the policies skip writing records altogether.
+ */
+public final class Telemetry {
+    private static TelemetryWriter writer = null;
+
+    private Telemetry() {
+    }
+
+    public static void configure(Path path, String label) throws IOException {
+        close();
+        writer = new TelemetryWriter(path, label);
+    }
+
+    public static boolean isEnabled() {
+        return writer != null;
+    }
+
+    public static TelemetryWriter getWriter() {
+        return writer;
+    }
+
+    public static void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ca.ncct.uottawa.selforg.ant.sim.telemetry;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Cursor over a telemetry stream written by {@link TelemetryWriter}. Each call to {@link #next()} reads one record
+ * into reusable arrays, which are valid until the following call.
+ */
+public class TelemetryReader implements Closeable {
+    private final DataInputStream in;
+    private final String label;
+
+    private byte type;
+    private double time;
+    private int count;
+    private int[] ids = new int[16];
+    private int[] statuses = new int[16];
+    private int[] sessions = new int[16];
+    private double[] cpu = new double[16];
+    private double[] ram = new double[16];
+    private int[] cloudlets = new int[16];
+    private int[] serverIds = new int[16];
+    private double[] pheromones = new double[16];
+
+    public TelemetryReader(Path path) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+        if (in.readInt() != TelemetryWriter.MAGIC) {
+            in.close();
+            throw new IOException("Not a telemetry stream: " + path);
+        }
+        short version = in.readShort();
+        if (version != TelemetryWriter.VERSION) {
+            in.close();
+            throw new IOException("Unsupported telemetry version " + version + " in " + path);
+        }
+        label = in.readUTF();
+    }
+
+    /**
+     * @return false when the end of the stream is reached
+     */
+    public boolean next() throws IOException {
+        int nextType = in.read();
+        if (nextType < 0) {
+            return false;
+        }
+        try {
+            type = (byte) nextType;
+            time = in.readDouble();
+            count = in.readInt();
+
+            switch (type) {
+                case TelemetryWriter.SERVERS:
+                    ensureCapacity(count);
+                    for (int i = 0; i < count; i++) {
+                        ids[i] = in.readInt();
+                        statuses[i] = in.readByte();
+                        sessions[i] = in.readInt();
+                        cpu[i] = in.readDouble();
+                        ram[i] = in.readDouble();
+                        cloudlets[i] = in.readInt();
+                    }
+                    break;
+                case TelemetryWriter.PHEROMONE:
+                    ensureCapacity(count);
+                    for (int i = 0; i < count; i++) {
+                        ids[i] = in.readInt();
+                        pheromones[i] = in.readDouble();
+                    }
+                    break;
+                case TelemetryWriter.ANTS:
+                    ensureCapacity(count);
+                    for (int i = 0; i < count; i++) {
+                        ids[i] = in.readInt();
+                        serverIds[i] = in.readInt();
+                    }
+                    break;
+                case TelemetryWriter.SCALE:
+                    break;
+                default:
+                    throw new IOException("Unknown telemetry record type " + type);
+            }
+        } catch (EOFException e) {
+            // a run killed mid-write leaves a partial last record
+            return false;
+        }
+        return true;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * @return the number of entries of the record, or the server change of a {@link TelemetryWriter#SCALE} record
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the server id of a servers or pheromone entry, or the ant uid of an ants entry
+     */
+    public int getId(int i) {
+        return ids[i];
+    }
+
+    public int getStatus(int i) {
+        return statuses[i];
+    }
+
+    public int getSessions(int i) {
+        return sessions[i];
+    }
+
+    public double getCpu(int i) {
+        return cpu[i];
+    }
+
+    public double getRam(int i) {
+        return ram[i];
+    }
+
+    public int getCloudlets(int i) {
+        return cloudlets[i];
+    }
+
+    public int getServerId(int i) {
+        return serverIds[i];
+    }
+
+    public double getPheromone(int i) {
+        return pheromones[i];
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > ids.length) {
+            int length = Math.max(size, ids.length * 2);
+            ids = Arrays.copyOf(ids, length);
+            statuses = Arrays.copyOf(statuses, length);
+            sessions = Arrays.copyOf(sessions, length);
+            cpu = Arrays.copyOf(cpu, length);
+            ram = Arrays.copyOf(ram, length);
+            cloudlets = Arrays.copyOf(cloudlets, length);
+            serverIds = Arrays.copyOf(serverIds, length);
+            pheromones = Arrays.copyOf(pheromones, length);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
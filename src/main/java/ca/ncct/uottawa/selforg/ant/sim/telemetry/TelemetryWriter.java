@@ -0,0 +1,102 @@
+package ca.ncct.uottawa.selforg.ant.sim.telemetry;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Appends typed telemetry records to a binary stream. The stream starts with {@link #MAGIC}, {@link #VERSION} and a
+ * label, followed by records of a type byte, the simulation time and the record payload:
+ * <ul>
+ * <li>{@link #SERVERS}: count, then per server id, status ordinal, sessions, cpu, ram, cloudlets</li>
+ * <li>{@link #PHEROMONE}: count, then per server id, pheromone level</li>
+ * <li>{@link #ANTS}: count, then per ant uid, server id</li>
+ * <li>{@link #SCALE}: number of servers added (positive) or removed (negative)</li>
+ * </ul>
+ * Records with a count are written by a begin call followed by one call per entry. Write errors are rethrown as
+ * {@link UncheckedIOException} since the autoscaling policies can not throw checked exceptions.
+ */
+public class TelemetryWriter implements Closeable {
+    static final int MAGIC = 0x414e5454;
+    static final short VERSION = 1;
+
+    public static final byte SERVERS = 1;
+    public static final byte PHEROMONE = 2;
+    public static final byte ANTS = 3;
+    public static final byte SCALE = 4;
+
+    private final DataOutputStream out;
+
+    public TelemetryWriter(Path path, String label) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeUTF(label);
+    }
+
+    public void beginServers(double time, int count) {
+        begin(SERVERS, time, count);
+    }
+
+    public void server(int id, int status, int sessions, double cpu, double ram, int cloudlets) {
+        try {
+            out.writeInt(id);
+            out.writeByte(status);
+            out.writeInt(sessions);
+            out.writeDouble(cpu);
+            out.writeDouble(ram);
+            out.writeInt(cloudlets);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void beginPheromone(double time, int count) {
+        begin(PHEROMONE, time, count);
+    }
+
+    public void pheromone(int serverId, double level) {
+        try {
+            out.writeInt(serverId);
+            out.writeDouble(level);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void beginAnts(double time, int count) {
+        begin(ANTS, time, count);
+    }
+
+    public void ant(int uid, int serverId) {
+        try {
+            out.writeInt(uid);
+            out.writeInt(serverId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void scale(double time, int serverChange) {
+        begin(SCALE, time, serverChange);
+    }
+
+    private void begin(byte type, double time, int count) {
+        try {
+            out.writeByte(type);
+            out.writeDouble(time);
+            out.writeInt(count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}